@@ -0,0 +1,101 @@
+package com.wineshop.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.granite.config.GraniteConfig;
+import org.granite.config.flex.ServicesConfig;
+import org.granite.context.GraniteContext;
+import org.granite.context.SimpleGraniteContext;
+import org.granite.messaging.amf.io.AMF3Deserializer;
+import org.granite.messaging.amf.io.AMF3Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wineshop.entities.Vineyard;
+
+/**
+ * AMF3 serialization of a vineyard with its wines, as returned by the repositories and published as data updates
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class AmfSerializationBenchmark {
+
+    @Param({ "0", "10", "100", "1000" })
+    public int wines;
+
+    private Vineyard vineyard;
+
+    private byte[] serialized;
+
+    @Setup
+    public void setup() throws Exception {
+        InputStream config = AmfSerializationBenchmark.class.getResourceAsStream("/benchmark-granite-config.xml");
+        try {
+            GraniteConfig graniteConfig = new GraniteConfig(null, config, null, null);
+            ServicesConfig servicesConfig = new ServicesConfig(null, null, false);
+            SimpleGraniteContext.createThreadInstance(graniteConfig, servicesConfig, new HashMap<String, Object>());
+        }
+        finally {
+            config.close();
+        }
+
+        vineyard = Fixtures.vineyard(1, wines);
+        serialized = serialize(vineyard);
+    }
+
+    @TearDown
+    public void tearDown() {
+        GraniteContext.release();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return serialize(vineyard);
+    }
+
+    @Benchmark
+    public Object deserialize() throws Exception {
+        return deserialize(serialized);
+    }
+
+    @Benchmark
+    public Object roundTrip() throws Exception {
+        return deserialize(serialize(vineyard));
+    }
+
+    private static byte[] serialize(Object object) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        AMF3Serializer serializer = new AMF3Serializer(out);
+        serializer.writeObject(object);
+        serializer.close();
+        return out.toByteArray();
+    }
+
+    private static Object deserialize(byte[] data) throws Exception {
+        AMF3Deserializer deserializer = new AMF3Deserializer(new ByteArrayInputStream(data));
+        try {
+            return deserializer.readObject();
+        }
+        finally {
+            deserializer.close();
+        }
+    }
+}
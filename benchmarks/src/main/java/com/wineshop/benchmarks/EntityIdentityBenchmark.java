@@ -0,0 +1,107 @@
+package com.wineshop.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wineshop.data.UidGenerator;
+import com.wineshop.entities.Wine;
+
+/**
+ * Uid generation and uid based equals/hashCode of entities held in large collections
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class EntityIdentityBenchmark {
+
+    /* Power of two so the next probe is selected with a mask */
+    private static final int PROBES = 1024;
+
+    @Param({ "1000", "100000" })
+    public int size;
+
+    private List<Wine> wines;
+
+    private Set<Wine> set;
+
+    /* Other instances with the uids of elements of the collection, as received from the server */
+    private Wine[] probes;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        wines = new ArrayList<Wine>(size);
+        for (int i = 0; i < size; i++) {
+            Wine wine = new Wine();
+            wine.getUid();
+            wines.add(wine);
+        }
+        set = new HashSet<Wine>(wines);
+
+        Random random = new Random(42);
+        probes = new Wine[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = new Wine();
+            probes[i].setUid(wines.get(random.nextInt(size)).getUid());
+        }
+    }
+
+    /* Previous implementation of AbstractEntity.uid(), still used for the uids of entities created by the client */
+    @Benchmark
+    public String randomUuid() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    public String nextUid() {
+        return UidGenerator.next();
+    }
+
+    @Benchmark
+    public String newEntityUid() {
+        return new Wine().getUid();
+    }
+
+    @Benchmark
+    public boolean equalsCopy() {
+        Wine probe = probes[next++ & (PROBES - 1)];
+        return wines.get(0).equals(probe);
+    }
+
+    @Benchmark
+    public Set<Wine> buildHashSet() {
+        return new HashSet<Wine>(wines);
+    }
+
+    @Benchmark
+    public boolean hashSetContains() {
+        return set.contains(probes[next++ & (PROBES - 1)]);
+    }
+
+    /* Linear scan as done by List.contains/indexOf/remove on the wines of a vineyard */
+    @Benchmark
+    public int listIndexOf() {
+        return wines.indexOf(probes[next++ & (PROBES - 1)]);
+    }
+}
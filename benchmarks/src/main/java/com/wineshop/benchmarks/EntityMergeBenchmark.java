@@ -0,0 +1,119 @@
+package com.wineshop.benchmarks;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javafx.beans.value.WritableValue;
+
+import org.granite.client.javafx.tide.JavaFXApplication;
+import org.granite.client.tide.data.EntityManager;
+import org.granite.client.tide.impl.SimpleContextManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wineshop.client.entities.Address;
+import com.wineshop.client.entities.Vineyard;
+
+/**
+ * Merge in the client entity manager of a batch of vineyards pushed by the server, against a context
+ * that already holds these vineyards
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class EntityMergeBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int updates;
+
+    private EntityManager entityManager;
+
+    /* Copies of the managed vineyards with the same version, as received again after a reconnection */
+    private List<Vineyard> unchanged;
+
+    /**
+     * Copies with a new version, built before each invocation because a merge makes them stale
+     */
+    @State(Scope.Thread)
+    public static class Pushed {
+
+        private int version = 0;
+
+        private List<Vineyard> vineyards;
+
+        @Setup(Level.Invocation)
+        public void push(EntityMergeBenchmark benchmark) throws Exception {
+            vineyards = vineyards(benchmark.updates, ++version);
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        entityManager = new SimpleContextManager(new JavaFXApplication()).getContext().getEntityManager();
+        entityManager.mergeExternalData(vineyards(updates, 0));
+        unchanged = vineyards(updates, 0);
+    }
+
+    @Benchmark
+    public Object mergeUpdated(Pushed pushed) {
+        return entityManager.mergeExternalData(pushed.vineyards);
+    }
+
+    @Benchmark
+    public Object mergeUnchanged() {
+        return entityManager.mergeExternalData(unchanged);
+    }
+
+    private static List<Vineyard> vineyards(int count, int version) throws Exception {
+        List<Vineyard> vineyards = new ArrayList<Vineyard>(count);
+        for (int i = 1; i <= count; i++) {
+            Vineyard vineyard = new Vineyard();
+            setField(vineyard, "id", Long.valueOf(i));
+            setField(vineyard, "uid", "VINEYARD-" + i);
+            setField(vineyard, "version", version);
+            vineyard.setName(Fixtures.name(i) + " v" + version);
+            vineyard.setAddress(new Address());
+            vineyard.getAddress().setAddress(i + " route des vins");
+            vineyards.add(vineyard);
+        }
+        return vineyards;
+    }
+
+    /**
+     * Sets the id, uid or version of an entity, which are read-only properties of the generated entities
+     */
+    @SuppressWarnings("unchecked")
+    private static void setField(Object entity, String name, Object value) throws Exception {
+        for (Class<?> c = entity.getClass(); c != null; c = c.getSuperclass()) {
+            try {
+                Field field = c.getDeclaredField(name);
+                field.setAccessible(true);
+                Object property = field.get(entity);
+                if (property instanceof WritableValue)
+                    ((WritableValue<Object>)property).setValue(value);
+                else
+                    field.set(entity, value);
+                return;
+            }
+            catch (NoSuchFieldException e) {
+                // Look in superclass
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+}
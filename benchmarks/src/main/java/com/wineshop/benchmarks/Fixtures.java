@@ -0,0 +1,74 @@
+package com.wineshop.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import com.wineshop.entities.Address;
+import com.wineshop.entities.Vineyard;
+import com.wineshop.entities.Wine;
+import com.wineshop.services.VineyardFormat;
+import com.wineshop.services.VineyardRecord;
+
+/**
+ * Builds the vineyards and wines used by the benchmarks
+ */
+final class Fixtures {
+
+    private static final Wine.Type[] TYPES = Wine.Type.values();
+
+    private Fixtures() {
+    }
+
+    static String name(int index) {
+        return String.format("Vineyard %06d", index);
+    }
+
+    static Vineyard vineyard(int index, int wineCount) {
+        Vineyard vineyard = new Vineyard();
+        vineyard.setName(name(index));
+        vineyard.setAddress(new Address());
+        vineyard.getAddress().setAddress(index + " route des vins");
+        vineyard.setWines(new ArrayList<Wine>(wineCount));
+        for (int i = 0; i < wineCount; i++) {
+            Wine wine = new Wine();
+            wine.setVineyard(vineyard);
+            wine.setName("Wine " + i);
+            wine.setYear(1950 + (i % 60));
+            wine.setType(TYPES[i % TYPES.length]);
+            vineyard.getWines().add(wine);
+        }
+        return vineyard;
+    }
+
+    /**
+     * Streams generated vineyard records to the importer, so large datasets are never held in memory
+     */
+    static VineyardFormat.RecordReader records(final int vineyardCount, final int winesPerVineyard) {
+        return new VineyardFormat.RecordReader() {
+
+            private int index = 0;
+
+            @Override
+            public VineyardRecord read() throws IOException {
+                if (index == vineyardCount)
+                    return null;
+
+                VineyardRecord record = new VineyardRecord(++index);
+                record.setName(name(index));
+                record.setAddress(index + " route des vins");
+                for (int i = 0; i < winesPerVineyard; i++) {
+                    VineyardRecord.WineRecord wine = new VineyardRecord.WineRecord();
+                    wine.setName("Wine " + i);
+                    wine.setYear(1950 + ((index + i) % 60));
+                    wine.setType(TYPES[(index + i) % TYPES.length]);
+                    record.getWines().add(wine);
+                }
+                return record;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,139 @@
+package com.wineshop.benchmarks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.GenericXmlApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import com.wineshop.entities.Vineyard;
+import com.wineshop.entities.Wine;
+import com.wineshop.entities.WineFilter;
+import com.wineshop.services.ImportResult;
+import com.wineshop.services.VineyardImportExport;
+import com.wineshop.services.VineyardRepository;
+import com.wineshop.services.WineRepository;
+
+/**
+ * Paged queries of the repositories against an in-memory HSQLDB database seeded with a large dataset.
+ * Offset pages from findByFilter are compared with the keyset pages from findByNameAfter at the start
+ * and at the end of the vineyards, keyset pages are also measured under the sorts by address and by wine count.
+ * The second-level and query caches are disabled by benchmark-context.xml, so every call runs its queries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class RepositoryQueryBenchmark {
+
+    private static final int PAGE_SIZE = 25;
+
+    @Param({ "10000" })
+    public int vineyards;
+
+    @Param({ "20" })
+    public int winesPerVineyard;
+
+    private GenericXmlApplicationContext context;
+
+    private VineyardRepository vineyardRepository;
+
+    private WineRepository wineRepository;
+
+    private final Map<String, Object> filter = new HashMap<String, Object>();
+
+    private Pageable lastPage;
+
+    /* Last vineyard before the last page, where a client scrolling with keysets would resume */
+    private Vineyard lastPageStart;
+
+    private WineFilter wineFilter;
+
+    @Setup
+    public void setup() throws Exception {
+        /* A new database for each trial, trials are not affected by the data of the previous ones */
+        System.setProperty("benchmark.db", "benchmark" + System.nanoTime());
+        context = new GenericXmlApplicationContext("classpath:benchmark-context.xml");
+        vineyardRepository = context.getBean(VineyardRepository.class);
+        wineRepository = context.getBean(WineRepository.class);
+
+        ImportResult result = context.getBean(VineyardImportExport.class).importVineyards(Fixtures.records(vineyards, winesPerVineyard));
+        if (result.getCreated() != vineyards)
+            throw new IllegalStateException("Seeding failed: " + result.getErrors());
+
+        int pages = (vineyards + PAGE_SIZE - 1) / PAGE_SIZE;
+        lastPage = new PageRequest(pages - 1, PAGE_SIZE, sort());
+        List<Vineyard> before = vineyardRepository.findByFilter(filter, new PageRequest(pages - 2, PAGE_SIZE, sort())).getContent();
+        lastPageStart = before.get(before.size() - 1);
+
+        wineFilter = new WineFilter();
+        wineFilter.setVineyardId(lastPageStart.getId());
+        wineFilter.setMinYear(1960);
+        wineFilter.setType(Wine.Type.RED);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<Vineyard> findByFilterFirstPage() {
+        return vineyardRepository.findByFilter(filter, new PageRequest(0, PAGE_SIZE, sort()));
+    }
+
+    @Benchmark
+    public Page<Vineyard> findByFilterLastPage() {
+        return vineyardRepository.findByFilter(filter, lastPage);
+    }
+
+    @Benchmark
+    public List<Vineyard> findByNameAfterFirstPage() {
+        return vineyardRepository.findByNameAfter(null, null, null, null, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Vineyard> findByNameAfterLastPage() {
+        return vineyardRepository.findByNameAfter(null, null, null, new Object[] { lastPageStart.getName() }, lastPageStart.getId(), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Vineyard> findByAddressAfter() {
+        return vineyardRepository.findByNameAfter(null, new String[] { "address", "name" }, new boolean[] { false, false },
+            new Object[] { lastPageStart.getAddress().getAddress(), lastPageStart.getName() }, lastPageStart.getId(), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Vineyard> findByWineCountAfter() {
+        return vineyardRepository.findByNameAfter(null, new String[] { "wineCount", "name" }, new boolean[] { true, false },
+            new Object[] { lastPageStart.getWineCount(), lastPageStart.getName() }, lastPageStart.getId(), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Wine> findWinesByFilterAfter() {
+        return wineRepository.findByFilterAfter(wineFilter, null, null, null, null, PAGE_SIZE);
+    }
+
+    private static Sort sort() {
+        return new Sort(Sort.Direction.ASC, "name", "id");
+    }
+}
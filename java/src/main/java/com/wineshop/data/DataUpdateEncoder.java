@@ -0,0 +1,58 @@
+package com.wineshop.data;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.granite.tide.data.DataContext.EntityUpdateType;
+
+import com.wineshop.entities.Vineyard;
+import com.wineshop.entities.Wine;
+
+/**
+ * Reduces the published entities to the part that changed.
+ * 
+ * A vineyard update only carries its wines when wines were added to it in the same batch: wine changes
+ * are published as their own updates, removed wines are removed from the collections by the clients, and
+ * clients keep their loaded wines when an update carries unloaded ones. Wines are published with a
+ * shallow copy of their vineyard. Vineyards are also published as copies, the entities of the persistence
+ * context are not modified.
+ * 
+ * Updates are coalesced and a vineyard version also changes when its wines are saved, so consecutive updates
+ * of a vineyard do not have consecutive versions: each published vineyard carries the version it had in the
+ * previous update published for it, and clients that do not have this version fetch the vineyard again.
+ */
+class DataUpdateEncoder {
+
+    private final Set<Serializable> vineyardsWithNewWines = new HashSet<Serializable>();
+    private final Map<Serializable, Integer> publishedVersions;
+
+    /**
+     * @param publishedVersions last published version of each vineyard by id, updated with the encoded vineyards
+     */
+    DataUpdateEncoder(DataUpdates updates, Map<Serializable, Integer> publishedVersions) {
+        this.publishedVersions = publishedVersions;
+        for (DataUpdates.DataUpdate update : updates) {
+            if (update.getType() == EntityUpdateType.PERSIST && update.getEntity() instanceof Wine)
+                vineyardsWithNewWines.add(((Wine)update.getEntity()).vineyardId());
+        }
+    }
+
+    Object encode(DataUpdates.DataUpdate update) {
+        Object entity = update.getEntity();
+        if (entity instanceof Wine)
+            return ((Wine)entity).shallowCopy();
+        if (!(entity instanceof Vineyard))
+            return entity;
+
+        Vineyard vineyard = ((Vineyard)entity).shallowCopy();
+        if (update.getType() == EntityUpdateType.PERSIST || vineyardsWithNewWines.contains(vineyard.getId()))
+            vineyard.setWines(((Vineyard)entity).getWines());
+        if (update.getType() == EntityUpdateType.REMOVE)
+            publishedVersions.remove(vineyard.getId());
+        else
+            vineyard.setPreviousVersion(publishedVersions.put(vineyard.getId(), vineyard.getVersion()));
+        return vineyard;
+    }
+}
@@ -0,0 +1,81 @@
+package com.wineshop.data;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+import org.granite.tide.data.DataContext.EntityUpdateType;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.wineshop.entities.AbstractEntity;
+
+/**
+ * Collects the changes of entities for {@link DataUpdatePublisher}.
+ * 
+ * Changes are accumulated per transaction and handed to the publisher once it is committed,
+ * so rolled back changes are never published and each entity appears once per transaction
+ * whatever the number of flushes.
+ */
+public class DataUpdateListener {
+
+    private static final Object PENDING_UPDATES = new Object();
+
+    private static volatile DataUpdatePublisher publisher;
+
+    static void setPublisher(DataUpdatePublisher publisher) {
+        DataUpdateListener.publisher = publisher;
+    }
+
+    @PostPersist
+    public void onPostPersist(AbstractEntity entity) {
+        addUpdate(EntityUpdateType.PERSIST, entity);
+    }
+
+    @PostUpdate
+    public void onPostUpdate(AbstractEntity entity) {
+        addUpdate(EntityUpdateType.UPDATE, entity);
+    }
+
+    @PostRemove
+    public void onPostRemove(AbstractEntity entity) {
+        addUpdate(EntityUpdateType.REMOVE, entity);
+    }
+
+    private static void addUpdate(EntityUpdateType type, AbstractEntity entity) {
+        if (publisher == null)
+            return;
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            DataUpdates updates = new DataUpdates();
+            updates.add(type, entity);
+            publish(updates);
+            return;
+        }
+
+        DataUpdates pending = (DataUpdates)TransactionSynchronizationManager.getResource(PENDING_UPDATES);
+        if (pending == null) {
+            final DataUpdates updates = new DataUpdates();
+            TransactionSynchronizationManager.bindResource(PENDING_UPDATES, updates);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    publish(updates);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PENDING_UPDATES);
+                }
+            });
+            pending = updates;
+        }
+        pending.add(type, entity);
+    }
+
+    private static void publish(DataUpdates updates) {
+        DataUpdatePublisher publisher = DataUpdateListener.publisher;
+        if (publisher != null && !updates.isEmpty())
+            publisher.publish(updates);
+    }
+}
@@ -0,0 +1,387 @@
+package com.wineshop.data;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.ServletContext;
+
+import org.granite.gravity.Gravity;
+import org.granite.gravity.GravityManager;
+import org.granite.tide.data.DataContext;
+import org.granite.tide.data.DataContext.EntityUpdateType;
+import org.granite.tide.data.DataEnabled.PublishMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.ServletContextAware;
+
+import com.wineshop.entities.Vineyard;
+import com.wineshop.entities.Wine;
+import com.wineshop.metrics.ServerMetrics;
+import com.wineshop.services.VineyardDataParams;
+
+/**
+ * Publishes entity changes to the clients in batches.
+ * 
+ * The changes committed during a time window are coalesced (one net change per entity) and sent
+ * as a single data update message on the topic, instead of one message per remote call. A batch
+ * is sent early when it reaches the maximum size, to bound the size of messages.
+ * Updates are tagged by {@link VineyardDataParams} so each client only receives the vineyards it observes
+ * and the created vineyards matching its filter,
+ * and reduced by {@link DataUpdateEncoder} to the state that changed.
+ * 
+ * When Gravity does not keep up, at most maxQueuedBatches batches wait to be sent. Beyond that, the
+ * current batch is sent by the next flush and the overflow policy decides what happens to the new changes:
+ * <ul>
+ * <li>COALESCE keeps merging them in the current batch, up to maxPendingUpdates changes, then drops them as DROP</li>
+ * <li>DROP drops the creations and updates, clients resynchronize the vineyards whose next update does not
+ * follow the version they have. Deletions are kept, clients would not find out about them otherwise</li>
+ * <li>DISCONNECT drops all the pending changes and disconnects the clients from data updates
+ * (see {@link VineyardDataParams#disconnectAll()}) until they search for vineyards again</li>
+ * </ul>
+ * These limits apply to the queue of the publisher, which is shared by all clients. The queue of each
+ * subscriber is owned by Gravity and not visible to the application: it is bounded by
+ * max-messages-queued-per-channel in granite-config.xml, messages beyond it are dropped for this
+ * subscriber only, and Gravity closes the channel of a subscriber that stopped polling after
+ * channel-idle-timeout-millis.
+ * 
+ * For each topic, the time taken to dispatch a batch to the subscribed channels (fan-out), the delay
+ * between the first change of a batch and its dispatch and the batch sizes are recorded in {@link ServerMetrics}.
+ * The number of Gravity channels is sampled every {@link #CHANNEL_SAMPLE_SECONDS} seconds rather than per batch,
+ * reading it goes through the platform MBean server.
+ */
+@Component
+@ManagedResource(objectName="com.wineshop:type=DataUpdatePublisher", description="Publishing of data updates to clients")
+public class DataUpdatePublisher implements InitializingBean, DisposableBean, ServletContextAware {
+
+    private static final Logger log = LoggerFactory.getLogger(DataUpdatePublisher.class);
+
+    public static enum OverflowPolicy {
+        COALESCE,
+        DROP,
+        DISCONNECT
+    }
+
+    private static final int MAX_PUBLISHED_VERSIONS = 10000;
+
+    static final long CHANNEL_SAMPLE_SECONDS = 10;
+
+    /* Previous version sent after dropped updates, no client has it */
+    private static final Integer DROPPED_VERSION = -1;
+
+    @Value("${data.publish.topic:wineshopTopic}")
+    private String topic;
+
+    /* Time window (ms) during which committed changes are coalesced */
+    @Value("${data.publish.window:100}")
+    private long window;
+
+    @Value("${data.publish.maxBatchSize:500}")
+    private int maxBatchSize;
+
+    @Value("${data.publish.maxQueuedBatches:10}")
+    private int maxQueuedBatches;
+
+    /* Changes kept in the current batch by COALESCE while the queue is full */
+    @Value("${data.publish.maxPendingUpdates:5000}")
+    private int maxPendingUpdates;
+
+    @Value("${data.publish.overflow:COALESCE}")
+    private OverflowPolicy overflowPolicy;
+
+    @Autowired
+    private ServerMetrics metrics;
+
+    private ServletContext servletContext;
+    private ScheduledExecutorService executor;
+    private DataUpdates pending = new DataUpdates();
+    private long pendingSince;
+    private boolean scheduled = false;
+
+    /* Last published version of the vineyards by id, the least recently published are forgotten */
+    private final Map<Serializable, Integer> publishedVersions = Collections.synchronizedMap(
+        new LinkedHashMap<Serializable, Integer>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Serializable, Integer> eldest) {
+                return size() > MAX_PUBLISHED_VERSIONS;
+            }
+        });
+
+    private final AtomicInteger queuedBatches = new AtomicInteger();
+    private final AtomicLong publishedBatches = new AtomicLong();
+    private final AtomicLong publishedUpdates = new AtomicLong();
+    private final AtomicLong receivedUpdates = new AtomicLong();
+    private final AtomicLong droppedUpdates = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+    private volatile int channels = -1;
+
+    public DataUpdatePublisher() {
+    }
+
+    DataUpdatePublisher(String topic, long window, int maxBatchSize, int maxQueuedBatches, int maxPendingUpdates,
+            OverflowPolicy overflowPolicy, ServerMetrics metrics) {
+        this.topic = topic;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.maxQueuedBatches = maxQueuedBatches;
+        this.maxPendingUpdates = maxPendingUpdates;
+        this.overflowPolicy = overflowPolicy;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void setServletContext(ServletContext servletContext) {
+        this.servletContext = servletContext;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "DataUpdatePublisher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sampleChannels();
+            }
+        }, 0, CHANNEL_SAMPLE_SECONDS, TimeUnit.SECONDS);
+        DataUpdateListener.setPublisher(this);
+    }
+
+    @Override
+    public void destroy() {
+        DataUpdateListener.setPublisher(null);
+        executor.shutdown();
+    }
+
+    /**
+     * Adds committed changes to the current batch
+     */
+    public synchronized void publish(DataUpdates updates) {
+        receivedUpdates.addAndGet(updates.size());
+        if (pending.isEmpty())
+            pendingSince = System.nanoTime();
+        pending.addAll(updates);
+        if (pending.size() >= maxBatchSize && queuedBatches.get() < maxQueuedBatches) {
+            final DataUpdates batch = pending;
+            final long batchSince = pendingSince;
+            pending = new DataUpdates();
+            queuedBatches.incrementAndGet();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    queuedBatches.decrementAndGet();
+                    send(batch, batchSince);
+                }
+            });
+            return;
+        }
+        if (pending.size() >= maxBatchSize) {
+            overflows.incrementAndGet();
+            if (overflowPolicy == OverflowPolicy.DISCONNECT) {
+                log.warn("Publishing queue full, {} data updates dropped and clients disconnected", pending.size());
+                dropped(pending);
+                pending = new DataUpdates();
+                VineyardDataParams.disconnectAll();
+            }
+            else if (overflowPolicy == OverflowPolicy.DROP || pending.size() > maxPendingUpdates) {
+                DataUpdates changes = pending.removeChanges();
+                log.warn("Publishing queue full, {} data updates dropped", changes.size());
+                dropped(changes);
+            }
+        }
+        if (!scheduled && !pending.isEmpty()) {
+            scheduled = true;
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        DataUpdates batch;
+        long batchSince;
+        synchronized (this) {
+            batch = pending;
+            batchSince = pendingSince;
+            pending = new DataUpdates();
+            scheduled = false;
+        }
+        for (DataUpdates part : batch.split(maxBatchSize))
+            send(part, batchSince);
+    }
+
+    private void send(DataUpdates batch, long batchSince) {
+        if (batch.isEmpty())
+            return;
+        try {
+            long start = System.nanoTime();
+            if (!dispatch(batch)) {
+                dropped(batch);
+                return;
+            }
+            metrics.latency("publish." + topic).record(ServerMetrics.micros(start));
+            metrics.latency("publish." + topic + ".delay").record(ServerMetrics.micros(batchSince));
+            metrics.count("publish." + topic + ".updates").record(batch.size());
+            publishedBatches.incrementAndGet();
+            publishedUpdates.addAndGet(batch.size());
+            log.debug("Published {} data updates on {}", batch.size(), topic);
+        }
+        catch (Exception e) {
+            log.error("Could not publish data updates on " + topic, e);
+            dropped(batch);
+        }
+    }
+
+    /**
+     * Encodes a batch and publishes it to the subscribers of the topic, returns false when Gravity is not started
+     */
+    boolean dispatch(DataUpdates batch) {
+        Gravity gravity = servletContext != null ? GravityManager.getGravity(servletContext) : null;
+        if (gravity == null) {
+            log.warn("Gravity not started, {} data updates not published", batch.size());
+            return false;
+        }
+
+        try {
+            DataContext.init(gravity, topic, VineyardDataParams.class, PublishMode.MANUAL);
+            DataUpdateEncoder encoder = new DataUpdateEncoder(batch, publishedVersions);
+            Set<String> createdUids = new HashSet<String>();
+            List<Vineyard> createdVineyards = new ArrayList<Vineyard>();
+            VineyardDataParams.publishing(createdUids);
+            for (DataUpdates.DataUpdate update : batch) {
+                if (update.getType() == EntityUpdateType.PERSIST) {
+                    createdUids.add(update.getEntity().getUid());
+                    if (update.getEntity() instanceof Vineyard)
+                        createdVineyards.add((Vineyard)update.getEntity());
+                }
+                DataContext.addUpdate(update.getType(), encoder.encode(update));
+            }
+            DataContext.publish();
+            VineyardDataParams.observeCreated(createdVineyards);
+            return true;
+        }
+        finally {
+            VineyardDataParams.published();
+            DataContext.remove();
+        }
+    }
+
+    /**
+     * Marks the vineyards of dropped updates so that their next update makes clients fetch them again
+     */
+    private void dropped(DataUpdates batch) {
+        droppedUpdates.addAndGet(batch.size());
+        for (DataUpdates.DataUpdate update : batch) {
+            Object entity = update.getEntity();
+            if (entity instanceof Vineyard)
+                publishedVersions.put(((Vineyard)entity).getId(), DROPPED_VERSION);
+            else if (entity instanceof Wine)
+                publishedVersions.put(((Wine)entity).vineyardId(), DROPPED_VERSION);
+        }
+    }
+
+    @ManagedAttribute(description="Changes waiting in the current batch")
+    public synchronized int getPendingUpdates() {
+        return pending.size();
+    }
+
+    @ManagedAttribute(description="Full batches waiting to be sent by the publisher, not including the queues of the subscribers")
+    public int getQueuedBatches() {
+        return queuedBatches.get();
+    }
+
+    @ManagedAttribute(description="Committed entity changes received")
+    public long getReceivedUpdates() {
+        return receivedUpdates.get();
+    }
+
+    @ManagedAttribute(description="Data updates published after coalescing")
+    public long getPublishedUpdates() {
+        return publishedUpdates.get();
+    }
+
+    @ManagedAttribute(description="Batches published")
+    public long getPublishedBatches() {
+        return publishedBatches.get();
+    }
+
+    @ManagedAttribute(description="Data updates dropped by the overflow policy or publishing errors")
+    public long getDroppedUpdates() {
+        return droppedUpdates.get();
+    }
+
+    @ManagedAttribute(description="Times a full batch could not be queued")
+    public long getOverflows() {
+        return overflows.get();
+    }
+
+    /**
+     * Gravity has no public API for the subscriptions of a topic, so the ChannelCount of its MBean is read
+     * instead. It counts all the messaging channels connected to Gravity, whatever their subscriptions:
+     * it is an upper bound of the subscribers of the topic, not their number.
+     */
+    private void sampleChannels() {
+        int count = -1;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (ObjectName name : server.queryNames(new ObjectName("org.graniteds:type=Gravity,*"), null)) {
+                count = ((Number)server.getAttribute(name, "ChannelCount")).intValue();
+                break;
+            }
+        }
+        catch (JMException e) {
+            log.debug("Gravity channel count not available", e);
+        }
+        channels = count;
+        if (count >= 0)
+            metrics.count("gravity.channels").record(count);
+    }
+
+    @ManagedAttribute(description="Messaging channels connected to Gravity (all topics) at the last sample, -1 when unknown")
+    public int getChannels() {
+        return channels;
+    }
+
+    @ManagedAttribute(description="Overflow policy (COALESCE, DROP or DISCONNECT)")
+    public String getOverflowPolicy() {
+        return overflowPolicy.name();
+    }
+
+    @ManagedAttribute
+    public void setOverflowPolicy(String overflowPolicy) {
+        this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy);
+    }
+}
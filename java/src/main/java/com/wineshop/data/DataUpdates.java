@@ -0,0 +1,109 @@
+package com.wineshop.data;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.granite.tide.data.DataContext.EntityUpdateType;
+
+import com.wineshop.entities.AbstractEntity;
+
+/**
+ * Ordered set of entity changes keeping only the net change of each entity:
+ * repeated updates are merged into the latest state, a creation followed by
+ * updates stays a creation and a creation followed by a deletion cancels out.
+ * A deletion followed by a creation of the same uid (an entity imported again) is an update: clients
+ * still have the entity, and a deletion coming after it must still be published.
+ */
+public class DataUpdates implements Iterable<DataUpdates.DataUpdate> {
+
+    private final Map<String, DataUpdate> updates = new LinkedHashMap<String, DataUpdate>();
+
+    public void add(EntityUpdateType type, AbstractEntity entity) {
+        String key = entity.getUid();
+        DataUpdate update = updates.get(key);
+        if (update == null)
+            updates.put(key, new DataUpdate(type, entity));
+        else if (update.type == EntityUpdateType.PERSIST && type == EntityUpdateType.REMOVE)
+            updates.remove(key);
+        else {
+            if (type == EntityUpdateType.REMOVE)
+                update.type = type;
+            else if (update.type == EntityUpdateType.REMOVE)
+                update.type = EntityUpdateType.UPDATE;
+            update.entity = entity;
+        }
+    }
+
+    public void addAll(DataUpdates dataUpdates) {
+        for (DataUpdate update : dataUpdates)
+            add(update.type, update.entity);
+    }
+
+    /**
+     * Removes the creations and updates, only keeping the deletions
+     * 
+     * @return the removed changes
+     */
+    public DataUpdates removeChanges() {
+        DataUpdates changes = new DataUpdates();
+        for (Iterator<DataUpdate> i = updates.values().iterator(); i.hasNext(); ) {
+            DataUpdate update = i.next();
+            if (update.type != EntityUpdateType.REMOVE) {
+                changes.updates.put(update.entity.getUid(), update);
+                i.remove();
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Splits the changes in consecutive parts of at most maxSize changes
+     */
+    public List<DataUpdates> split(int maxSize) {
+        List<DataUpdates> parts = new ArrayList<DataUpdates>();
+        DataUpdates part = null;
+        for (DataUpdate update : updates.values()) {
+            if (part == null || part.size() >= maxSize) {
+                part = new DataUpdates();
+                parts.add(part);
+            }
+            part.updates.put(update.entity.getUid(), update);
+        }
+        return parts;
+    }
+
+    public int size() {
+        return updates.size();
+    }
+
+    public boolean isEmpty() {
+        return updates.isEmpty();
+    }
+
+    @Override
+    public Iterator<DataUpdate> iterator() {
+        return updates.values().iterator();
+    }
+
+    public static class DataUpdate {
+
+        private EntityUpdateType type;
+        private AbstractEntity entity;
+
+        private DataUpdate(EntityUpdateType type, AbstractEntity entity) {
+            this.type = type;
+            this.entity = entity;
+        }
+
+        public EntityUpdateType getType() {
+            return type;
+        }
+
+        public AbstractEntity getEntity() {
+            return entity;
+        }
+    }
+}
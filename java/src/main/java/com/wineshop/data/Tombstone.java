@@ -0,0 +1,69 @@
+package com.wineshop.data;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.Index;
+
+/**
+ * Record of a deleted entity, kept for a limited time so that clients synchronizing
+ * their changes after a disconnection can remove the entities deleted in the meantime.
+ *
+ * Rows are inserted and pruned by TombstoneListener.
+ */
+@Entity
+@Table(name="TOMBSTONE")
+public class Tombstone {
+
+    /* Tombstones older than this are pruned, clients that last synchronized before have to reload their data */
+    public static final long RETENTION_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    /* An entity imported again with the same uid may be deleted several times */
+    @Id
+    @GeneratedValue(strategy=GenerationType.IDENTITY)
+    @Column(name="ID")
+    private Long id;
+
+    @Column(name="ENTITY_UID", nullable=false, length=36)
+    private String uid;
+
+    @Column(name="ENTITY_TYPE", nullable=false, length=50)
+    private String type;
+
+    @Column(name="ENTITY_ID")
+    private Long entityId;
+
+    @Column(name="REMOVED", nullable=false)
+    @Index(name="IDX_TOMBSTONE_REMOVED")
+    private Long removed;
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    /**
+     * Simple class name of the deleted entity
+     */
+    public String getType() {
+        return type;
+    }
+
+    public Long getEntityId() {
+        return entityId;
+    }
+
+    /**
+     * Time of the deletion in milliseconds
+     */
+    public Long getRemoved() {
+        return removed;
+    }
+}
@@ -0,0 +1,52 @@
+package com.wineshop.data;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.PostRemove;
+import javax.sql.DataSource;
+
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.wineshop.entities.AbstractEntity;
+
+/**
+ * Records a tombstone for each deleted entity.
+ *
+ * JPA callbacks must not use the entity manager, so rows are inserted with JDBC. The data source
+ * is the one of the JpaTransactionManager, the insert uses the connection of the current transaction
+ * and is committed or rolled back with the deletion. Expired tombstones are pruned at most once per hour.
+ */
+public class TombstoneListener {
+
+    private static final Logger log = LoggerFactory.getLogger(TombstoneListener.class);
+
+    private static final long PRUNE_INTERVAL_MILLIS = 60L * 60 * 1000;
+
+    private static volatile JdbcTemplate jdbcTemplate;
+
+    private static final AtomicLong lastPrune = new AtomicLong(0L);
+
+    public static void setDataSource(DataSource dataSource) {
+        TombstoneListener.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @PostRemove
+    public void onPostRemove(AbstractEntity entity) {
+        JdbcTemplate jdbcTemplate = TombstoneListener.jdbcTemplate;
+        if (jdbcTemplate == null)
+            return;
+
+        long now = System.currentTimeMillis();
+        jdbcTemplate.update("insert into TOMBSTONE (ENTITY_UID, ENTITY_TYPE, ENTITY_ID, REMOVED) values (?, ?, ?, ?)",
+            entity.getUid(), Hibernate.getClass(entity).getSimpleName(), entity.getId(), now);
+
+        long last = lastPrune.get();
+        if (now - last > PRUNE_INTERVAL_MILLIS && lastPrune.compareAndSet(last, now)) {
+            int pruned = jdbcTemplate.update("delete from TOMBSTONE where REMOVED < ?", now - Tombstone.RETENTION_MILLIS);
+            log.debug("Pruned {} expired tombstones", pruned);
+        }
+    }
+}
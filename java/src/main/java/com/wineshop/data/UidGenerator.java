@@ -0,0 +1,51 @@
+package com.wineshop.data;
+
+import java.security.SecureRandom;
+
+/**
+ * Generates entity uids in the ULID format: a 48 bits timestamp in milliseconds followed by
+ * 80 bits of per-thread random data, encoded in 26 characters of Crockford's base 32.
+ * 
+ * Uids sort by creation time, which keeps inserts in the ENTITY_UID index local, and are
+ * cheaper than UUID.randomUUID() which draws from a shared SecureRandom for each call:
+ * each thread draws its random part once and then increments it, so uids of a thread
+ * never collide and uids of different threads differ by their 80 bits random base.
+ * Both paths are compared by EntityIdentityBenchmark in the benchmarks module.
+ */
+public final class UidGenerator {
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    private static final long MASK_40 = (1L << 40) - 1;
+
+    private static final ThreadLocal<long[]> STATE = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            SecureRandom random = new SecureRandom();
+            return new long[] { random.nextLong() & MASK_40, random.nextLong() & MASK_40 };
+        }
+    };
+
+    private UidGenerator() {
+    }
+
+    public static String next() {
+        long[] state = STATE.get();
+        if (++state[1] > MASK_40) {
+            state[1] = 0;
+            state[0] = (state[0] + 1) & MASK_40;
+        }
+        return encode(System.currentTimeMillis(), state[0], state[1]);
+    }
+
+    static String encode(long time, long high, long low) {
+        char[] chars = new char[26];
+        for (int i = 9; i >= 0; i--, time >>>= 5)
+            chars[i] = ALPHABET[(int)(time & 31)];
+        for (int i = 17; i >= 10; i--, high >>>= 5)
+            chars[i] = ALPHABET[(int)(high & 31)];
+        for (int i = 25; i >= 18; i--, low >>>= 5)
+            chars[i] = ALPHABET[(int)(low & 31)];
+        return new String(chars);
+    }
+}
@@ -0,0 +1,83 @@
+package com.wineshop.data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.wineshop.entities.Vineyard;
+
+/**
+ * Changes of vineyards and wines since a previous synchronization of a client
+ *
+ * Changed vineyards are returned with all their wines, so created and updated wines are
+ * found in the wines of their vineyard. Deleted entities are returned as uids.
+ */
+public class VineyardChanges implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long until;
+
+    private boolean reset;
+
+    private List<Vineyard> vineyards = new ArrayList<Vineyard>();
+
+    private List<String> removedVineyards = new ArrayList<String>();
+
+    private List<String> removedWines = new ArrayList<String>();
+
+    /**
+     * High-water mark to pass to the next synchronization
+     */
+    public Long getUntil() {
+        return until;
+    }
+
+    public void setUntil(Long until) {
+        this.until = until;
+    }
+
+    /**
+     * True when the changes are not available (too old or too many), the client has to reload its data
+     */
+    public boolean isReset() {
+        return reset;
+    }
+
+    public void setReset(boolean reset) {
+        this.reset = reset;
+    }
+
+    /**
+     * Vineyards created or updated, or whose wines have been created or updated
+     */
+    public List<Vineyard> getVineyards() {
+        return vineyards;
+    }
+
+    public void setVineyards(List<Vineyard> vineyards) {
+        this.vineyards = vineyards;
+    }
+
+    /**
+     * Uids of the deleted vineyards
+     */
+    public List<String> getRemovedVineyards() {
+        return removedVineyards;
+    }
+
+    public void setRemovedVineyards(List<String> removedVineyards) {
+        this.removedVineyards = removedVineyards;
+    }
+
+    /**
+     * Uids of the deleted wines
+     */
+    public List<String> getRemovedWines() {
+        return removedWines;
+    }
+
+    public void setRemovedWines(List<String> removedWines) {
+        this.removedWines = removedWines;
+    }
+}
@@ -0,0 +1,77 @@
+package com.wineshop.data;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+import org.hibernate.Cache;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.wineshop.entities.Vineyard;
+import com.wineshop.entities.Wine;
+
+/**
+ * Evicts the cached wines of a vineyard when one of its wines is created, updated or deleted.
+ * 
+ * Hibernate only maintains the second-level cache of a collection when it is modified through
+ * its owner, not when a wine is saved on its own (mappedBy side). The callbacks are the same
+ * as the ones used by DataUpdateListener, so the cache is invalidated for exactly the changes
+ * that are published to clients.
+ * 
+ * The callbacks run during the flush, while Hibernate may hold a soft lock on the collection,
+ * so eviction is deferred to the completion of the current transaction.
+ */
+public class WineCacheListener {
+
+    private static final Object PENDING_EVICTIONS = new Object();
+
+    private static volatile Cache cache;
+
+    public static void setCache(Cache cache) {
+        WineCacheListener.cache = cache;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void evictVineyardWines(Wine wine) {
+        if (cache == null)
+            return;
+        Serializable vineyardId = wine.vineyardId();
+        if (vineyardId == null)
+            return;
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict(vineyardId);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        Set<Serializable> pending = (Set<Serializable>)TransactionSynchronizationManager.getResource(PENDING_EVICTIONS);
+        if (pending == null) {
+            final Set<Serializable> vineyardIds = new HashSet<Serializable>();
+            TransactionSynchronizationManager.bindResource(PENDING_EVICTIONS, vineyardIds);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PENDING_EVICTIONS);
+                    for (Serializable vineyardId : vineyardIds)
+                        evict(vineyardId);
+                }
+            });
+            pending = vineyardIds;
+        }
+        pending.add(vineyardId);
+    }
+
+    private static void evict(Serializable vineyardId) {
+        Cache cache = WineCacheListener.cache;
+        if (cache != null)
+            cache.evictCollection(Vineyard.class.getName() + ".wines", vineyardId);
+    }
+}
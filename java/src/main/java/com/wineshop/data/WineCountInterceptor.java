@@ -0,0 +1,54 @@
+package com.wineshop.data;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+
+import com.wineshop.entities.Wine;
+import com.wineshop.metrics.StatementCountInterceptor;
+
+/**
+ * Maintains the wine counts of vineyards before each flush, see {@link Wine#updateWineCount(EntityManager)}.
+ * 
+ * Configured as hibernate.ejb.interceptor in persistence.xml in place of StatementCountInterceptor,
+ * Hibernate accepts a single interceptor. The counts are updated before the dirty checking of the
+ * flush so that the modified vineyards are always updated by it.
+ * 
+ * A wine saved by the client references the detached vineyard it was sent with, the entity manager
+ * of the current transaction gives the managed vineyard whose count is flushed.
+ */
+public class WineCountInterceptor extends StatementCountInterceptor {
+
+    private static final long serialVersionUID = 1L;
+
+    private static volatile EntityManagerFactory entityManagerFactory;
+
+    public static void setEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
+        WineCountInterceptor.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void preFlush(Iterator entities) {
+        /* Vineyards loaded while counting are added to the persistence context being iterated */
+        List<Wine> wines = new ArrayList<Wine>();
+        while (entities.hasNext()) {
+            Object entity = entities.next();
+            if (entity instanceof Wine)
+                wines.add((Wine)entity);
+        }
+        if (wines.isEmpty())
+            return;
+
+        EntityManagerFactory entityManagerFactory = WineCountInterceptor.entityManagerFactory;
+        EntityManager entityManager = entityManagerFactory != null
+            ? EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory) : null;
+        for (Wine wine : wines)
+            wine.updateWineCount(entityManager);
+    }
+}
@@ -21,38 +21,102 @@
 package com.wineshop.entities;
 
 import java.io.Serializable;
-import java.util.UUID;
 
 import javax.persistence.Column;
 import javax.persistence.EntityListeners;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
 import javax.persistence.MappedSuperclass;
 import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Version;
 
-import org.granite.tide.data.DataPublishListener;
-import org.springframework.data.jpa.domain.AbstractPersistable;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.springframework.data.domain.Persistable;
+
+import com.wineshop.data.DataUpdateListener;
+import com.wineshop.data.TombstoneListener;
+import com.wineshop.data.UidGenerator;
 
 /**
  * @author Franck WOLFF
  */
 @MappedSuperclass
-@EntityListeners({AbstractEntity.AbstractEntityListener.class, DataPublishListener.class})
-public abstract class AbstractEntity extends AbstractPersistable<Long> implements Serializable {
+@EntityListeners({AbstractEntity.AbstractEntityListener.class, DataUpdateListener.class, TombstoneListener.class})
+public abstract class AbstractEntity implements Persistable<Long>, Serializable {
 
 	private static final long serialVersionUID = 1L;
 	
+    /* Ids are allocated from a sequence by blocks of 50 so new rows need no round-trip and inserts can be batched */
+    @Id
+    @GeneratedValue(generator="ENTITY_SEQ")
+    @GenericGenerator(name="ENTITY_SEQ", strategy="org.hibernate.id.enhanced.SequenceStyleGenerator", parameters={
+        @Parameter(name="sequence_name", value="ENTITY_SEQ"),
+        @Parameter(name="increment_size", value="50"),
+        @Parameter(name="optimizer", value="pooled")
+    })
+    private Long id;
 
     /* "UUID" and "UID" are Oracle reserved keywords -> "ENTITY_UID" */
+    /* Uids from UidGenerator have 26 characters, but the column is not reduced to CHAR(26):
+       new entities created by the JavaFX client arrive with the 36 characters UUID assigned by Tide,
+       as do the existing rows and the imported files that kept them */
     @Column(name="ENTITY_UID", unique=true, nullable=false, updatable=false, length=36)
     private String uid;
 
     @Version
     private Integer version;
 
+    /* Time of the last change in milliseconds, used to find the entities changed since a client last synchronized */
+    @Column(name="LAST_MODIFIED")
+    private Long lastModified;
+
+    @Override
+    public Long getId() {
+        return id;
+    }
+
+    protected void setId(Long id) {
+        this.id = id;
+    }
+
+    @Override
+    public boolean isNew() {
+        return id == null;
+    }
+
     public Integer getVersion() {
         return version;
     }
 
+    public String getUid() {
+        return uid();
+    }
+
+    public Long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Keeps the uid of an entity imported from another database, must be called before the uid is first used
+     */
+    public void setUid(String uid) {
+        if (this.uid != null && !this.uid.equals(uid))
+            throw new IllegalStateException("Uid already assigned: " + this.uid);
+        this.uid = uid;
+    }
+
+    /**
+     * Copies the identity (id, uid, version and modification time) of another instance of the same entity
+     */
+    protected void copyIdentity(AbstractEntity entity) {
+        id = entity.id;
+        uid = entity.uid();
+        version = entity.version;
+        lastModified = entity.lastModified;
+    }
+
     @Override
     public boolean equals(Object o) {
         return (o == this || (o instanceof AbstractEntity && uid().equals(((AbstractEntity)o).uid())));
@@ -63,17 +127,28 @@ public abstract class AbstractEntity extends AbstractPersistable<Long> implement
         return uid().hashCode();
     }
 
+    @Override
+    public String toString() {
+        return String.format("Entity of type %s with id: %s", getClass().getName(), id);
+    }
+
     public static class AbstractEntityListener {
 
         @PrePersist
         public void onPrePersist(AbstractEntity abstractEntity) {
             abstractEntity.uid();
+            abstractEntity.lastModified = System.currentTimeMillis();
+        }
+
+        @PreUpdate
+        public void onPreUpdate(AbstractEntity abstractEntity) {
+            abstractEntity.lastModified = System.currentTimeMillis();
         }
     }
 
     private String uid() {
         if (uid == null)
-            uid = UUID.randomUUID().toString();
+            uid = UidGenerator.next();
         return uid;
     }
 }
@@ -1,17 +1,41 @@
 package com.wineshop.entities;
 
+import java.text.Normalizer;
 import java.util.List;
+import java.util.Locale;
 
 import javax.persistence.Basic;
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
+import javax.persistence.Column;
 import javax.persistence.Embedded;
 import javax.persistence.Entity;
 import javax.persistence.OneToMany;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.Transient;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Index;
+import org.hibernate.annotations.Table;
+import org.hibernate.collection.PersistentBag;
+
 @Entity
+@Cacheable
+@Cache(usage=CacheConcurrencyStrategy.READ_WRITE)
+@Table(appliesTo="Vineyard", indexes={
+    @Index(name="IDX_VINEYARD_NAME_ID", columnNames={"name", "id"}),
+    @Index(name="IDX_VINEYARD_ADDRESS_ID", columnNames={"address", "id"}),
+    @Index(name="IDX_VINEYARD_ADDRESS_NAME_ID", columnNames={"address", "name", "id"}),
+    @Index(name="IDX_VINEYARD_WINE_COUNT_ID", columnNames={"WINE_COUNT", "id"}),
+    @Index(name="IDX_VINEYARD_WINE_COUNT_NAME_ID", columnNames={"WINE_COUNT", "name", "id"}),
+    @Index(name="IDX_VINEYARD_LAST_MODIFIED", columnNames={"LAST_MODIFIED"})
+})
 public class Vineyard extends AbstractEntity {
  
     private static final long serialVersionUID = 1L;
@@ -20,16 +44,32 @@ public class Vineyard extends AbstractEntity {
     @NotNull
     @Size(min=5, max=100, message="The name must contain between {min} and {max} characters")
     private String name;
+    
+    /* Lower-case name without accents, maintained on persist/update for prefix searches */
+    @Column(name="SEARCH_NAME", nullable=false, length=100)
+    @Index(name="IDX_VINEYARD_SEARCH_NAME")
+    private String searchName;
  
     @Embedded
     @Valid
     private Address address = new Address();
+    
+    /* Number of wines, maintained when wines are added, moved or removed so vineyards can be sorted by it with an index */
+    @Column(name="WINE_COUNT", nullable=false)
+    private int wineCount;
  
+    /* Lazy loading initializes the wines of up to 25 vineyards of the persistence context in one query */
     @OneToMany(cascade=CascadeType.ALL, mappedBy="vineyard",
         orphanRemoval=true)
+    @Cache(usage=CacheConcurrencyStrategy.READ_WRITE)
+    @BatchSize(size=25)
     @Valid
     private List<Wine> wines;
     
+    /* Version of the vineyard in the previous data update published to clients, only set on published vineyards */
+    @Transient
+    private Integer previousVersion;
+    
     public String getName() {
         return name;
     }
@@ -37,6 +77,10 @@ public class Vineyard extends AbstractEntity {
     public void setName(String nom) {
         this.name = nom;
     }
+    
+    public String getSearchName() {
+        return searchName;
+    }
  
     public Address getAddress() {
         return address;
@@ -46,6 +90,10 @@ public class Vineyard extends AbstractEntity {
         this.address = address;
     }
  
+    public int getWineCount() {
+        return wineCount;
+    }
+ 
     public List<Wine> getWines() {
         return wines;
     }
@@ -53,4 +101,49 @@ public class Vineyard extends AbstractEntity {
     public void setWines(List<Wine> wines) {
         this.wines = wines;
     }
+    
+    public Integer getPreviousVersion() {
+        return previousVersion;
+    }
+    
+    public void setPreviousVersion(Integer previousVersion) {
+        this.previousVersion = previousVersion;
+    }
+    
+    /**
+     * Copy with the same state and identity whose wines are left unloaded, so that a data update
+     * of the vineyard does not carry its whole collection of wines
+     */
+    public Vineyard shallowCopy() {
+        Vineyard copy = new Vineyard();
+        copy.copyIdentity(this);
+        copy.name = name;
+        copy.searchName = searchName;
+        copy.address = address;
+        copy.wineCount = wineCount;
+        copy.wines = new PersistentBag();
+        return copy;
+    }
+    
+    @PrePersist
+    @PreUpdate
+    protected void updateSearchName() {
+        searchName = normalize(name);
+    }
+    
+    /**
+     * Called when a wine of the vineyard is added, moved or removed, the wines may be saved without loading the collection
+     */
+    void addWineCount(int delta) {
+        wineCount += delta;
+    }
+    
+    /**
+     * Normalized form of a name used for searches: lower case, without accents
+     */
+    public static String normalize(String name) {
+        if (name == null)
+            return null;
+        return Normalizer.normalize(name, Normalizer.Form.NFD).replaceAll("\\p{M}", "").toLowerCase(Locale.ROOT);
+    }
 }
@@ -1,15 +1,40 @@
 package com.wineshop.entities;
 
+import java.io.Serializable;
+
 import javax.persistence.Basic;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityListeners;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.ManyToOne;
+import javax.persistence.PostLoad;
+import javax.persistence.PreRemove;
+import javax.persistence.Transient;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Index;
+import org.hibernate.annotations.Table;
+import org.hibernate.proxy.HibernateProxy;
+
+import com.wineshop.data.WineCacheListener;
+
 @Entity
+@Cacheable
+@Cache(usage=CacheConcurrencyStrategy.READ_WRITE)
+@EntityListeners(WineCacheListener.class)
+@Table(appliesTo="Wine", indexes={
+    @Index(name="IDX_WINE_YEAR_TYPE", columnNames={"year", "type"}),
+    @Index(name="IDX_WINE_VINEYARD_ID", columnNames={"vineyard_id", "id"}),
+    @Index(name="IDX_WINE_LAST_MODIFIED", columnNames={"LAST_MODIFIED"})
+})
 public class Wine extends AbstractEntity {
  
     private static final long serialVersionUID = 1L;
@@ -36,6 +61,13 @@ public class Wine extends AbstractEntity {
     @Enumerated(EnumType.STRING)
     @NotNull
     private Type type;
+
+    /* Vineyard whose wine count includes this wine, the counts are moved when the wine changes vineyard */
+    @Transient
+    private Vineyard countedVineyard;
+
+    @Transient
+    private boolean removed;
  
     public Vineyard getVineyard() {
         return vineyard;
@@ -68,4 +100,66 @@ public class Wine extends AbstractEntity {
     public void setType(Type type) {
         this.type = type;
     }
+
+    @PostLoad
+    protected void countLoaded() {
+        countedVineyard = vineyard;
+    }
+
+    /**
+     * Counts a new wine in its vineyard, or moves its count when it has changed vineyard.
+     * 
+     * Called by WineCountInterceptor before each flush, the persist and update callbacks may see
+     * the detached vineyard the wine was saved with: its count is changed on the instance managed
+     * by the entity manager, if any.
+     */
+    public void updateWineCount(EntityManager entityManager) {
+        Serializable countedId = idOf(countedVineyard);
+        Serializable vineyardId = vineyardId();
+        if (removed || vineyard == countedVineyard || (countedId != null && countedId.equals(vineyardId)))
+            return;
+        if (countedVineyard != null)
+            countedVineyard.addWineCount(-1);
+        Vineyard counted = vineyard;
+        if (counted != null && vineyardId != null && entityManager != null && !entityManager.contains(counted))
+            counted = entityManager.getReference(Vineyard.class, vineyardId);
+        if (counted != null)
+            counted.addWineCount(1);
+        countedVineyard = counted;
+    }
+
+    @PreRemove
+    protected void countRemoved() {
+        if (countedVineyard != null)
+            countedVineyard.addWineCount(-1);
+        countedVineyard = null;
+        removed = true;
+    }
+
+    /**
+     * Id of the vineyard, read without initializing a lazy proxy (e.g. during a flush)
+     */
+    public Serializable vineyardId() {
+        return idOf(vineyard);
+    }
+
+    private static Serializable idOf(Vineyard vineyard) {
+        if (vineyard instanceof HibernateProxy)
+            return ((HibernateProxy)vineyard).getHibernateLazyInitializer().getIdentifier();
+        return vineyard != null ? vineyard.getId() : null;
+    }
+
+    /**
+     * Copy with the same state and identity referencing a shallow copy of its vineyard,
+     * so that a data update of the wine does not carry the other wines of the vineyard
+     */
+    public Wine shallowCopy() {
+        Wine copy = new Wine();
+        copy.copyIdentity(this);
+        copy.vineyard = vineyard != null && Hibernate.isInitialized(vineyard) ? vineyard.shallowCopy() : vineyard;
+        copy.name = name;
+        copy.year = year;
+        copy.type = type;
+        return copy;
+    }
 }
@@ -0,0 +1,51 @@
+package com.wineshop.entities;
+
+import java.io.Serializable;
+
+/**
+ * Criteria of a search of wines, null criteria are ignored
+ */
+public class WineFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long vineyardId;
+
+    private Integer minYear;
+
+    private Integer maxYear;
+
+    private Wine.Type type;
+
+    public Long getVineyardId() {
+        return vineyardId;
+    }
+
+    public void setVineyardId(Long vineyardId) {
+        this.vineyardId = vineyardId;
+    }
+
+    public Integer getMinYear() {
+        return minYear;
+    }
+
+    public void setMinYear(Integer minYear) {
+        this.minYear = minYear;
+    }
+
+    public Integer getMaxYear() {
+        return maxYear;
+    }
+
+    public void setMaxYear(Integer maxYear) {
+        this.maxYear = maxYear;
+    }
+
+    public Wine.Type getType() {
+        return type;
+    }
+
+    public void setType(Wine.Type type) {
+        this.type = type;
+    }
+}
@@ -0,0 +1,70 @@
+package com.wineshop.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import com.wineshop.services.VineyardRepository;
+
+/**
+ * Records the latency of each method of the Spring Data repositories, as
+ * repository.&lt;Repository&gt;.&lt;method&gt; histograms of {@link ServerMetrics}
+ */
+@Aspect
+@Component
+public class RepositoryMetricsAspect {
+
+    private static final String SERVICES_PACKAGE = VineyardRepository.class.getPackage().getName();
+
+    @Autowired
+    private ServerMetrics metrics;
+
+    private final ConcurrentMap<Class<?>, String> repositoryNames = new ConcurrentHashMap<Class<?>, String>();
+
+    @Around("execution(public * *(..)) && !execution(* java.lang.Object.*(..)) "
+            + "&& (target(com.wineshop.services.VineyardRepository) || target(com.wineshop.services.WineRepository))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        String name = "repository." + repositoryName(joinPoint.getTarget().getClass()) + "." + joinPoint.getSignature().getName();
+        RequestMetrics request = RequestMetrics.current();
+        if (request != null)
+            request.enterService();
+        long start = System.nanoTime();
+        try {
+            return joinPoint.proceed();
+        }
+        catch (Throwable t) {
+            metrics.increment(name + ".errors");
+            throw t;
+        }
+        finally {
+            long micros = ServerMetrics.micros(start);
+            metrics.latency(name).record(micros);
+            if (request != null)
+                request.exitService(micros);
+        }
+    }
+
+    /**
+     * Simple name of the repository interface implemented by the Spring Data proxy
+     */
+    private String repositoryName(Class<?> targetClass) {
+        String name = repositoryNames.get(targetClass);
+        if (name == null) {
+            name = targetClass.getSimpleName();
+            for (Class<?> type : ClassUtils.getAllInterfacesForClassAsSet(targetClass)) {
+                if (type.getName().startsWith(SERVICES_PACKAGE + ".") && type.getSimpleName().endsWith("Repository")) {
+                    name = type.getSimpleName();
+                    break;
+                }
+            }
+            repositoryNames.put(targetClass, name);
+        }
+        return name;
+    }
+}
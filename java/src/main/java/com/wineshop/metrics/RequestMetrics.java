@@ -0,0 +1,58 @@
+package com.wineshop.metrics;
+
+/**
+ * Measures of the AMF request handled by the current thread: number of SQL statements
+ * prepared by Hibernate and time spent in repository calls. The remaining time of the
+ * request is spent in AMF deserialization/serialization, security and Tide.
+ */
+public class RequestMetrics {
+
+    private static final ThreadLocal<RequestMetrics> current = new ThreadLocal<RequestMetrics>();
+
+    private int statements = 0;
+    private long serviceMicros = 0L;
+    private int depth = 0;
+
+    public static RequestMetrics begin() {
+        RequestMetrics request = new RequestMetrics();
+        current.set(request);
+        return request;
+    }
+
+    public static void end() {
+        current.remove();
+    }
+
+    /**
+     * Measures of the current request or null outside of an AMF request
+     */
+    public static RequestMetrics current() {
+        return current.get();
+    }
+
+    public static void statementPrepared() {
+        RequestMetrics request = current.get();
+        if (request != null)
+            request.statements++;
+    }
+
+    /**
+     * Starts a repository call, nested calls are counted in the outermost one
+     */
+    public void enterService() {
+        depth++;
+    }
+
+    public void exitService(long micros) {
+        if (--depth == 0)
+            serviceMicros += micros;
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public long getServiceMicros() {
+        return serviceMicros;
+    }
+}
@@ -0,0 +1,102 @@
+package com.wineshop.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Latency and size histograms of the server hot paths: repository calls, AMF requests
+ * and data update publishing. Exported in JMX and on the /metrics HTTP endpoint.
+ * Durations are recorded in microseconds and reported in milliseconds.
+ */
+@Component
+@ManagedResource(objectName="com.wineshop:type=ServerMetrics", description="Latency and size histograms of the server")
+public class ServerMetrics {
+
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+
+    public Histogram latency(String name) {
+        return histogram(name, "ms", 1000.0);
+    }
+
+    public Histogram bytes(String name) {
+        return histogram(name, "bytes", 1.0);
+    }
+
+    public Histogram count(String name) {
+        return histogram(name, "", 1.0);
+    }
+
+    private Histogram histogram(String name, String unit, double scale) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram(name, unit, scale);
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null)
+                histogram = created;
+        }
+        return histogram;
+    }
+
+    public void increment(String name) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null)
+                counter = created;
+        }
+        counter.incrementAndGet();
+    }
+
+    /**
+     * Microseconds elapsed since a System.nanoTime() value
+     */
+    public static long micros(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000L;
+    }
+
+    @ManagedAttribute(description="Names of the recorded histograms")
+    public String[] getHistogramNames() {
+        return new TreeMap<String, Histogram>(histograms).keySet().toArray(new String[0]);
+    }
+
+    @ManagedAttribute(description="Event counters")
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> counter : counters.entrySet())
+            values.put(counter.getKey(), counter.getValue().get());
+        return values;
+    }
+
+    @ManagedOperation(description="Count, mean, percentiles and max of a histogram")
+    public String histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        return histogram != null ? histogram.toString() : null;
+    }
+
+    @ManagedAttribute(description="One line per histogram and counter")
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (Histogram histogram : new TreeMap<String, Histogram>(histograms).values())
+            sb.append(histogram).append('\n');
+        for (Map.Entry<String, Long> counter : getCounters().entrySet())
+            sb.append(counter.getKey()).append(": ").append(counter.getValue()).append('\n');
+        return sb.toString();
+    }
+
+    @ManagedOperation(description="Clears all histograms and counters")
+    public void reset() {
+        for (Histogram histogram : histograms.values())
+            histogram.reset();
+        counters.clear();
+    }
+}
@@ -0,0 +1,18 @@
+package com.wineshop.metrics;
+
+import org.hibernate.EmptyInterceptor;
+
+/**
+ * Counts the SQL statements prepared during the current AMF request, configured as
+ * hibernate.ejb.interceptor in persistence.xml through WineCountInterceptor. A JDBC batch is prepared once.
+ */
+public class StatementCountInterceptor extends EmptyInterceptor {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String onPrepareStatement(String sql) {
+        RequestMetrics.statementPrepared();
+        return sql;
+    }
+}
@@ -0,0 +1,54 @@
+package com.wineshop.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import
+ */
+public class ImportResult {
+
+    private int created;
+    private int updated;
+    private int rejected;
+    private final List<String> errors = new ArrayList<String>();
+
+    public int getCreated() {
+        return created;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Reasons of rejected records, prefixed by their position in the source
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    void created() {
+        created++;
+    }
+
+    void updated() {
+        updated++;
+    }
+
+    void rejected(int position, String message) {
+        rejected++;
+        errors.add("Line " + position + ": " + message);
+    }
+
+    void add(ImportResult result) {
+        created += result.created;
+        updated += result.updated;
+        rejected += result.rejected;
+        errors.addAll(result.errors);
+    }
+}
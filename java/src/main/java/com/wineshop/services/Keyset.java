@@ -0,0 +1,92 @@
+package com.wineshop.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Query;
+
+/**
+ * JPQL fragments of keyset (seek) pagination on sort keys followed by the id.
+ *
+ * The id is always the last key, so the order is deterministic and no row is skipped
+ * or repeated between pages. Each key is compared in its own direction, the id in the
+ * direction of the first key.
+ */
+final class Keyset {
+
+    private final List<String> keys;
+    private final boolean[] desc;
+    private final String idKey;
+
+    /**
+     * @param sortKeys JPQL expressions of the supported sort properties
+     * @param defaultSort sort property used when none is requested, or null to sort by id only
+     * @param sort requested sort properties, or null
+     * @param desc true for descending order of each sort property, missing values are ascending
+     * @param idKey JPQL expression of the id
+     */
+    Keyset(Map<String, String> sortKeys, String defaultSort, String[] sort, boolean[] desc, String idKey) {
+        this.desc = desc;
+        this.idKey = idKey;
+        if (sort == null || sort.length == 0) {
+            keys = defaultSort != null ? Collections.singletonList(sortKeys.get(defaultSort)) : Collections.<String>emptyList();
+            return;
+        }
+        if (sort.length > sortKeys.size())
+            throw new IllegalArgumentException("Too many sort properties: " + Arrays.toString(sort));
+        keys = new ArrayList<String>(sort.length);
+        for (String property : sort) {
+            String key = sortKeys.get(property);
+            if (key == null)
+                throw new IllegalArgumentException("Unsupported sort property: " + property);
+            if (keys.contains(key))
+                throw new IllegalArgumentException("Duplicate sort property: " + property);
+            keys.add(key);
+        }
+    }
+
+    /**
+     * Row value comparison (k1, k2, id) > (:last0, :last1, :lastId) expanded for JPQL
+     */
+    void appendAfter(StringBuilder jpql) {
+        jpql.append("(");
+        for (int i = 0; i <= keys.size(); i++) {
+            if (i > 0)
+                jpql.append(" or ");
+            jpql.append("(");
+            for (int j = 0; j < i; j++)
+                jpql.append(keys.get(j)).append(" = :last").append(j).append(" and ");
+            if (i < keys.size())
+                jpql.append(keys.get(i)).append(isDesc(i) ? " < " : " > ").append(":last").append(i);
+            else
+                jpql.append(idKey).append(isDesc(0) ? " < " : " > ").append(":lastId");
+            jpql.append(")");
+        }
+        jpql.append(")");
+    }
+
+    void appendOrderBy(StringBuilder jpql) {
+        jpql.append(" order by ");
+        for (int i = 0; i < keys.size(); i++)
+            jpql.append(keys.get(i)).append(isDesc(i) ? " desc, " : " asc, ");
+        jpql.append(idKey).append(isDesc(0) ? " desc" : " asc");
+    }
+
+    void checkLastValues(Object[] lastValues) {
+        if (lastValues == null ? !keys.isEmpty() : lastValues.length != keys.size())
+            throw new IllegalArgumentException("Expected " + keys.size() + " last values for sort " + keys);
+    }
+
+    void setParameters(Query query, Object[] lastValues, Long lastId) {
+        for (int i = 0; i < keys.size(); i++)
+            query.setParameter("last" + i, lastValues[i]);
+        query.setParameter("lastId", lastId);
+    }
+
+    private boolean isDesc(int index) {
+        return desc != null && index < desc.length && desc[index];
+    }
+}
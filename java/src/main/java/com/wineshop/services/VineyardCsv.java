@@ -0,0 +1,210 @@
+package com.wineshop.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.wineshop.entities.Wine;
+
+/**
+ * CSV (RFC 4180) reader and writer of vineyard records
+ */
+class VineyardCsv {
+
+    static final String[] COLUMNS = { "vineyard_uid", "vineyard", "address", "wine_uid", "wine", "year", "type" };
+
+    static class CsvRecordReader implements VineyardFormat.RecordReader {
+
+        private final BufferedReader reader;
+        private final Map<String, Integer> columns = new HashMap<String, Integer>();
+        private int line = 0;
+        private int rowLine;
+        private List<String> row;
+
+        CsvRecordReader(Reader reader) throws IOException {
+            this.reader = new BufferedReader(reader);
+            List<String> header = readRow();
+            if (header == null)
+                throw new IOException("Empty CSV input");
+            for (int i = 0; i < header.size(); i++)
+                columns.put(header.get(i).trim().toLowerCase(), i);
+            if (!columns.containsKey("vineyard") || !columns.containsKey("address"))
+                throw new IOException("CSV header must contain the columns vineyard and address");
+            row = readRow();
+        }
+
+        @Override
+        public VineyardRecord read() throws IOException {
+            if (row == null)
+                return null;
+
+            VineyardRecord record = new VineyardRecord(rowLine);
+            record.setUid(value(row, "vineyard_uid"));
+            record.setName(value(row, "vineyard"));
+            record.setAddress(value(row, "address"));
+            do {
+                addWine(record, row);
+                row = readRow();
+            }
+            while (row != null && sameVineyard(record, row));
+            return record;
+        }
+
+        private boolean sameVineyard(VineyardRecord record, List<String> row) {
+            String uid = value(row, "vineyard_uid");
+            if (uid != null || record.getUid() != null)
+                return uid != null && uid.equals(record.getUid());
+            return equal(record.getName(), value(row, "vineyard")) && equal(record.getAddress(), value(row, "address"));
+        }
+
+        private void addWine(VineyardRecord record, List<String> row) {
+            String wineUid = value(row, "wine_uid");
+            String name = value(row, "wine");
+            String year = value(row, "year");
+            String type = value(row, "type");
+            if (wineUid == null && name == null && year == null && type == null)
+                return;
+
+            VineyardRecord.WineRecord wine = new VineyardRecord.WineRecord();
+            wine.setUid(wineUid);
+            wine.setName(name);
+            try {
+                wine.setYear(year != null ? Integer.valueOf(year) : null);
+            }
+            catch (NumberFormatException e) {
+                record.getErrors().add("invalid year " + year + " (line " + rowLine + ")");
+            }
+            try {
+                wine.setType(type != null ? Wine.Type.valueOf(type.toUpperCase()) : null);
+            }
+            catch (IllegalArgumentException e) {
+                record.getErrors().add("invalid type " + type + " (line " + rowLine + ")");
+            }
+            record.getWines().add(wine);
+        }
+
+        private String value(List<String> row, String column) {
+            Integer index = columns.get(column);
+            if (index == null || index >= row.size())
+                return null;
+            String value = row.get(index).trim();
+            return value.length() > 0 ? value : null;
+        }
+
+        /**
+         * Reads the fields of the next row, quoted fields can contain separators and line breaks
+         */
+        private List<String> readRow() throws IOException {
+            int c = reader.read();
+            while (c == '\r' || c == '\n') {
+                if (c == '\n')
+                    line++;
+                c = reader.read();
+            }
+            if (c == -1)
+                return null;
+
+            rowLine = line + 1;
+            List<String> fields = new ArrayList<String>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            for (;;) {
+                if (quoted) {
+                    if (c == -1)
+                        throw new IOException("Unterminated quoted field at line " + rowLine);
+                    if (c == '"') {
+                        reader.mark(1);
+                        if (reader.read() == '"')
+                            field.append('"');
+                        else {
+                            reader.reset();
+                            quoted = false;
+                        }
+                    }
+                    else {
+                        if (c == '\n')
+                            line++;
+                        field.append((char)c);
+                    }
+                }
+                else if (c == '"' && field.length() == 0)
+                    quoted = true;
+                else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                }
+                else if (c == '\n' || c == '\r' || c == -1) {
+                    if (c == '\n')
+                        line++;
+                    fields.add(field.toString());
+                    return fields;
+                }
+                else
+                    field.append((char)c);
+                c = reader.read();
+            }
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    static class CsvRecordWriter implements VineyardFormat.RecordWriter {
+
+        private final Writer writer;
+
+        CsvRecordWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            writeRow((Object[])COLUMNS);
+        }
+
+        @Override
+        public void write(VineyardRecord record) throws IOException {
+            if (record.getWines().isEmpty())
+                writeRow(record.getUid(), record.getName(), record.getAddress(), null, null, null, null);
+            for (VineyardRecord.WineRecord wine : record.getWines())
+                writeRow(record.getUid(), record.getName(), record.getAddress(), wine.getUid(), wine.getName(), wine.getYear(), wine.getType());
+        }
+
+        private void writeRow(Object... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0)
+                    writer.write(',');
+                if (values[i] != null)
+                    writeField(values[i].toString());
+            }
+            writer.write("\r\n");
+        }
+
+        private void writeField(String value) throws IOException {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+}
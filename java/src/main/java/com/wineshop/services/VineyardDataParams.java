@@ -0,0 +1,279 @@
+package com.wineshop.services;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.granite.tide.data.DataContext;
+import org.granite.tide.data.DataObserveParams;
+import org.granite.tide.data.DataPublishParams;
+import org.granite.tide.data.DataTopicParams;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import com.wineshop.entities.Vineyard;
+import com.wineshop.entities.Wine;
+
+/**
+ * Selector parameters of wineshopTopic: each client session observes a single parameter of its own,
+ * and a data update is tagged with the parameter of every session that displays the vineyard it concerns
+ * (the vineyard itself or the vineyard of a wine), so the session selectors keep a constant size.
+ *
+ * The vineyards displayed by a session are tracked here: the first page of a search replaces them,
+ * so a refresh or a new filter forgets the previous results, and the next pages are added to them up
+ * to {@link #MAX_OBSERVED} vineyards. A created vineyard whose name matches the filter of a session
+ * is also sent to it, so the vineyards added by other clients still appear, and it is added to the vineyards
+ * of the session once the batch has been published.
+ *
+ * The sessions are indexed by observed vineyard id and by name filter, so tagging an update costs a few
+ * lookups whatever the number of sessions.
+ */
+public class VineyardDataParams implements DataTopicParams {
+
+    /* Vineyards remembered per session, the oldest are forgotten first */
+    static final int MAX_OBSERVED = 2000;
+
+    /* Sessions that did not search for this long are forgotten */
+    private static final long MAX_IDLE_MILLIS = TimeUnit.HOURS.toMillis(2);
+
+    private static final String OBSERVER_ATTRIBUTE = VineyardDataParams.class.getName() + ".observer";
+
+    private static final AtomicLong observerCount = new AtomicLong();
+
+    /* Observers by key, they and the indexes below are modified under the lock of this map */
+    private static final ConcurrentMap<String, Observer> observers = new ConcurrentHashMap<String, Observer>();
+
+    /* Keys of the observers of each vineyard id and of each name filter, read without lock when publishing */
+    private static final ConcurrentMap<Serializable, Set<String>> observersByVineyard = new ConcurrentHashMap<Serializable, Set<String>>();
+
+    private static final ConcurrentMap<String, Set<String>> observersByPrefix = new ConcurrentHashMap<String, Set<String>>();
+
+    private static final ThreadLocal<String> observing = new ThreadLocal<String>();
+
+    private static final ThreadLocal<Set<String>> created = new ThreadLocal<Set<String>>();
+
+    /**
+     * Replaces the vineyards observed by the current client with the first page of a search by name
+     */
+    public static void observeFirstPage(String name, Collection<Vineyard> vineyards) {
+        observe(Vineyard.normalize(name != null ? name : ""), vineyards);
+    }
+
+    /**
+     * Adds the vineyards to the ones observed by the current client
+     */
+    public static void observe(Collection<Vineyard> vineyards) {
+        observe(null, vineyards);
+    }
+
+    private static void observe(String namePrefix, Collection<Vineyard> vineyards) {
+        String key = currentObserver();
+        if (key == null)
+            return;
+        synchronized (observers) {
+            Observer observer = observers.get(key);
+            if (observer == null) {
+                pruneIdleObservers();
+                observer = new Observer(key);
+                observers.put(key, observer);
+            }
+            observer.observe(namePrefix, vineyards);
+        }
+
+        observing.set(key);
+        try {
+            DataContext.observe();
+        }
+        finally {
+            observing.remove();
+        }
+    }
+
+    /**
+     * Forgets the vineyards observed by all the sessions, which receive no more data updates until their
+     * next search. Used when the clients cannot keep up with the updates.
+     */
+    public static void disconnectAll() {
+        synchronized (observers) {
+            observers.clear();
+            observersByVineyard.clear();
+            observersByPrefix.clear();
+        }
+    }
+
+    /**
+     * Uids of the entities created in the updates published by the current thread,
+     * they are sent to the sessions whose filter matches their name
+     */
+    public static void publishing(Set<String> createdUids) {
+        created.set(createdUids);
+    }
+
+    public static void published() {
+        created.remove();
+    }
+
+    /**
+     * Adds created vineyards to the vineyards observed by the sessions whose filter matches their name,
+     * called once the batch that sent them to these sessions has been published
+     */
+    public static void observeCreated(Collection<Vineyard> vineyards) {
+        if (vineyards.isEmpty())
+            return;
+        synchronized (observers) {
+            for (Vineyard vineyard : vineyards) {
+                for (String key : matchingObservers(vineyard.getSearchName()))
+                    observers.get(key).add(vineyard.getId());
+            }
+        }
+    }
+
+    @Override
+    public void observes(DataObserveParams params) {
+        String key = observing.get();
+        if (key != null)
+            params.addValue(key, "1");
+    }
+
+    @Override
+    public void publishes(DataPublishParams params, Object entity) {
+        Serializable vineyardId = vineyardId(entity);
+        if (vineyardId == null)
+            return;
+        Set<String> keys = observersByVineyard.get(vineyardId);
+        if (keys != null) {
+            for (String key : keys)
+                params.setValue(key, "1");
+        }
+        Set<String> createdUids = created.get();
+        if (entity instanceof Vineyard && createdUids != null && createdUids.contains(((Vineyard)entity).getUid())) {
+            for (String key : matchingObservers(((Vineyard)entity).getSearchName()))
+                params.setValue(key, "1");
+        }
+    }
+
+    /**
+     * Keys of the sessions whose name filter is a prefix of the normalized name of a vineyard
+     */
+    private static Set<String> matchingObservers(String searchName) {
+        Set<String> keys = new HashSet<String>();
+        if (searchName == null)
+            return keys;
+        for (int i = 0; i <= searchName.length(); i++) {
+            Set<String> prefixKeys = observersByPrefix.get(searchName.substring(0, i));
+            if (prefixKeys != null)
+                keys.addAll(prefixKeys);
+        }
+        return keys;
+    }
+
+    private static String currentObserver() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null)
+            return null;
+        synchronized (attributes.getSessionMutex()) {
+            String key = (String)attributes.getAttribute(OBSERVER_ATTRIBUTE, RequestAttributes.SCOPE_SESSION);
+            if (key == null) {
+                key = "observer" + observerCount.incrementAndGet();
+                attributes.setAttribute(OBSERVER_ATTRIBUTE, key, RequestAttributes.SCOPE_SESSION);
+            }
+            return key;
+        }
+    }
+
+    private static void pruneIdleObservers() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Observer> i = observers.values().iterator(); i.hasNext(); ) {
+            Observer observer = i.next();
+            if (now - observer.lastAccess > MAX_IDLE_MILLIS) {
+                observer.clear();
+                i.remove();
+            }
+        }
+    }
+
+    private static <T> void index(ConcurrentMap<T, Set<String>> index, T value, String key) {
+        Set<String> keys = index.get(value);
+        if (keys == null) {
+            keys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            index.put(value, keys);
+        }
+        keys.add(key);
+    }
+
+    private static <T> void unindex(ConcurrentMap<T, Set<String>> index, T value, String key) {
+        Set<String> keys = index.get(value);
+        if (keys != null && keys.remove(key) && keys.isEmpty())
+            index.remove(value);
+    }
+
+    private static Serializable vineyardId(Object entity) {
+        if (entity instanceof Vineyard)
+            return ((Vineyard)entity).getId();
+        if (entity instanceof Wine)
+            return ((Wine)entity).vineyardId();
+        return null;
+    }
+
+    /**
+     * Vineyards displayed by a session and normalized name filter of its last search, modified under
+     * the lock of the observers with the indexes
+     */
+    private static class Observer {
+
+        private final String key;
+        private final Set<Serializable> vineyardIds = Collections.newSetFromMap(new LinkedHashMap<Serializable, Boolean>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Serializable, Boolean> eldest) {
+                if (size() <= MAX_OBSERVED)
+                    return false;
+                unindex(observersByVineyard, eldest.getKey(), key);
+                return true;
+            }
+        });
+        private String namePrefix = "";
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        Observer(String key) {
+            this.key = key;
+            index(observersByPrefix, namePrefix, key);
+        }
+
+        void observe(String namePrefix, Collection<Vineyard> vineyards) {
+            if (namePrefix != null) {
+                clear();
+                this.namePrefix = namePrefix;
+                index(observersByPrefix, namePrefix, key);
+            }
+            for (Vineyard vineyard : vineyards)
+                add(vineyard.getId());
+            lastAccess = System.currentTimeMillis();
+        }
+
+        void add(Serializable vineyardId) {
+            if (vineyardIds.add(vineyardId))
+                index(observersByVineyard, vineyardId, key);
+        }
+
+        /**
+         * Removes the observer from the indexes
+         */
+        void clear() {
+            for (Serializable vineyardId : vineyardIds)
+                unindex(observersByVineyard, vineyardId, key);
+            vineyardIds.clear();
+            unindex(observersByPrefix, namePrefix, key);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.wineshop.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * File formats supported by {@link VineyardImportExport}
+ */
+public enum VineyardFormat {
+
+    /**
+     * One row per wine (or per vineyard without wine), consecutive rows of the same vineyard are grouped.
+     * Columns: vineyard_uid, vineyard, address, wine_uid, wine, year, type
+     */
+    CSV("text/csv") {
+        @Override
+        public RecordReader reader(Reader reader) throws IOException {
+            return new VineyardCsv.CsvRecordReader(reader);
+        }
+
+        @Override
+        public RecordWriter writer(Writer writer) throws IOException {
+            return new VineyardCsv.CsvRecordWriter(writer);
+        }
+    },
+
+    /**
+     * Array of vineyard objects: { uid, name, address, wines: [ { uid, name, year, type } ] }
+     */
+    JSON("application/json") {
+        @Override
+        public RecordReader reader(Reader reader) throws IOException {
+            return new VineyardJson.JsonRecordReader(reader);
+        }
+
+        @Override
+        public RecordWriter writer(Writer writer) throws IOException {
+            return new VineyardJson.JsonRecordWriter(writer);
+        }
+    };
+
+    private final String contentType;
+
+    private VineyardFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public abstract RecordReader reader(Reader reader) throws IOException;
+
+    public abstract RecordWriter writer(Writer writer) throws IOException;
+
+    public interface RecordReader extends Closeable {
+
+        /**
+         * @return the next record or null at the end of the input
+         */
+        public VineyardRecord read() throws IOException;
+    }
+
+    public interface RecordWriter extends Closeable {
+
+        public void write(VineyardRecord record) throws IOException;
+
+        public void flush() throws IOException;
+    }
+}
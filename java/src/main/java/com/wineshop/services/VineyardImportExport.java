@@ -0,0 +1,210 @@
+package com.wineshop.services;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+
+import org.hibernate.CacheMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.wineshop.entities.Vineyard;
+import com.wineshop.entities.Wine;
+
+/**
+ * Bulk import and export of vineyards with their wines.
+ * Records are streamed: imports run in transactions of {@link #CHUNK_SIZE} vineyards, exports read pages of
+ * {@link #PAGE_SIZE} vineyards, so memory usage does not depend on the size of the data.
+ */
+@Service
+public class VineyardImportExport {
+
+    private static final Logger log = LoggerFactory.getLogger(VineyardImportExport.class);
+
+    /* Vineyards imported in each transaction */
+    static final int CHUNK_SIZE = 50;
+
+    /* Entities written between two flush/clear of the persistence context, a multiple of the JDBC batch size */
+    static final int FLUSH_SIZE = 500;
+
+    /* Vineyards read for each page of an export */
+    static final int PAGE_SIZE = 100;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("validator")
+    private Validator validator;
+
+    /**
+     * Creates or updates (when a vineyard or wine with the same uid exists) the vineyards read from the reader.
+     * Invalid records are rejected and reported, a failed chunk does not roll back the previous ones.
+     */
+    public ImportResult importVineyards(VineyardFormat.RecordReader reader) throws IOException {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        ImportResult result = new ImportResult();
+        List<VineyardRecord> chunk = new ArrayList<VineyardRecord>(CHUNK_SIZE);
+        for (;;) {
+            VineyardRecord record = reader.read();
+            if (record != null)
+                chunk.add(record);
+            if (chunk.size() == CHUNK_SIZE || (record == null && !chunk.isEmpty())) {
+                result.add(importChunk(transactionTemplate, chunk));
+                chunk.clear();
+            }
+            if (record == null)
+                break;
+        }
+        log.info("Imported vineyards: {} created, {} updated, {} rejected",
+                new Object[] { result.getCreated(), result.getUpdated(), result.getRejected() });
+        return result;
+    }
+
+    private ImportResult importChunk(TransactionTemplate transactionTemplate, final List<VineyardRecord> chunk) {
+        final ImportResult result = new ImportResult();
+        try {
+            transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    int pending = 0;
+                    for (VineyardRecord record : chunk) {
+                        pending += importRecord(record, result);
+                        if (pending >= FLUSH_SIZE) {
+                            entityManager.flush();
+                            entityManager.clear();
+                            pending = 0;
+                        }
+                    }
+                }
+            });
+            return result;
+        }
+        catch (RuntimeException e) {
+            log.error("Could not import vineyards from line " + chunk.get(0).getPosition(), e);
+            ImportResult failed = new ImportResult();
+            for (VineyardRecord record : chunk)
+                failed.rejected(record.getPosition(), "import failed: " + e.getMessage());
+            return failed;
+        }
+    }
+
+    /**
+     * @return number of entities written
+     */
+    private int importRecord(VineyardRecord record, ImportResult result) {
+        if (!record.checkUids()) {
+            result.rejected(record.getPosition(), record.getErrors().toString());
+            return 0;
+        }
+
+        Vineyard candidate = record.toVineyard();
+        Set<ConstraintViolation<Vineyard>> violations = validator.validate(candidate);
+        if (!violations.isEmpty()) {
+            List<String> messages = new ArrayList<String>(violations.size());
+            for (ConstraintViolation<Vineyard> violation : violations)
+                messages.add(violation.getPropertyPath() + ": " + violation.getMessage());
+            result.rejected(record.getPosition(), messages.toString());
+            return 0;
+        }
+
+        Vineyard vineyard = record.getUid() != null ? findByUid(record.getUid()) : null;
+        if (vineyard == null) {
+            entityManager.persist(candidate);
+            result.created();
+        }
+        else {
+            record.applyTo(vineyard);
+            result.updated();
+        }
+        return 1 + record.getWines().size();
+    }
+
+    private Vineyard findByUid(String uid) {
+        List<Vineyard> vineyards = entityManager
+            .createQuery("select v from Vineyard v where v.uid = :uid", Vineyard.class)
+            .setParameter("uid", uid)
+            .getResultList();
+        return vineyards.isEmpty() ? null : vineyards.get(0);
+    }
+
+    /**
+     * Writes all vineyards ordered by id to the writer, one page at a time
+     *
+     * @return number of vineyards exported
+     */
+    public int exportVineyards(VineyardFormat.RecordWriter writer) throws IOException {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        int count = 0;
+        Long lastId = 0L;
+        for (;;) {
+            final Long afterId = lastId;
+            List<VineyardRecord> page = transactionTemplate.execute(new TransactionCallback<List<VineyardRecord>>() {
+                @Override
+                public List<VineyardRecord> doInTransaction(TransactionStatus status) {
+                    return exportPage(afterId);
+                }
+            });
+            if (page.isEmpty())
+                break;
+
+            for (VineyardRecord record : page)
+                writer.write(record);
+            writer.flush();
+            count += page.size();
+            lastId = page.get(page.size()-1).getId();
+        }
+        log.info("Exported {} vineyards", count);
+        return count;
+    }
+
+    /* Bulk reads bypass the second-level cache so that an export does not evict the entries of interactive clients */
+    private List<VineyardRecord> exportPage(Long afterId) {
+        List<Vineyard> vineyards = entityManager
+            .createQuery("select v from Vineyard v where v.id > :afterId order by v.id", Vineyard.class)
+            .setParameter("afterId", afterId)
+            .setMaxResults(PAGE_SIZE)
+            .setHint("org.hibernate.cacheMode", CacheMode.IGNORE)
+            .getResultList();
+        if (vineyards.isEmpty())
+            return Collections.emptyList();
+
+        Map<Long, List<Wine>> winesByVineyard = new HashMap<Long, List<Wine>>();
+        for (Vineyard vineyard : vineyards)
+            winesByVineyard.put(vineyard.getId(), new ArrayList<Wine>());
+        List<Wine> wines = entityManager
+            .createQuery("select w from Wine w where w.vineyard in :vineyards order by w.id", Wine.class)
+            .setParameter("vineyards", vineyards)
+            .setHint("org.hibernate.cacheMode", CacheMode.IGNORE)
+            .getResultList();
+        for (Wine wine : wines)
+            winesByVineyard.get(wine.getVineyard().getId()).add(wine);
+
+        List<VineyardRecord> page = new ArrayList<VineyardRecord>(vineyards.size());
+        for (Vineyard vineyard : vineyards)
+            page.add(VineyardRecord.of(vineyard, winesByVineyard.get(vineyard.getId())));
+        entityManager.clear();
+        return page;
+    }
+}
@@ -0,0 +1,135 @@
+package com.wineshop.services;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.wineshop.entities.Wine;
+
+/**
+ * Streaming JSON reader and writer of vineyard records
+ */
+class VineyardJson {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    static class JsonRecordReader implements VineyardFormat.RecordReader {
+
+        private final JsonParser parser;
+
+        JsonRecordReader(Reader reader) throws IOException {
+            parser = JSON_FACTORY.createParser(reader);
+            if (parser.nextToken() != JsonToken.START_ARRAY)
+                throw new IOException("JSON input must be an array of vineyards");
+        }
+
+        @Override
+        public VineyardRecord read() throws IOException {
+            JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.END_ARRAY)
+                return null;
+            if (token != JsonToken.START_OBJECT)
+                throw new IOException("Expected a vineyard object at line " + parser.getCurrentLocation().getLineNr());
+
+            VineyardRecord record = new VineyardRecord(parser.getCurrentLocation().getLineNr());
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("uid".equals(field))
+                    record.setUid(parser.getValueAsString());
+                else if ("name".equals(field))
+                    record.setName(parser.getValueAsString());
+                else if ("address".equals(field))
+                    record.setAddress(parser.getValueAsString());
+                else if ("wines".equals(field) && parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT)
+                        record.getWines().add(readWine(record));
+                }
+                else
+                    parser.skipChildren();
+            }
+            return record;
+        }
+
+        private VineyardRecord.WineRecord readWine(VineyardRecord record) throws IOException {
+            VineyardRecord.WineRecord wine = new VineyardRecord.WineRecord();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("uid".equals(field))
+                    wine.setUid(parser.getValueAsString());
+                else if ("name".equals(field))
+                    wine.setName(parser.getValueAsString());
+                else if ("year".equals(field)) {
+                    if (token == JsonToken.VALUE_NUMBER_INT)
+                        wine.setYear(parser.getIntValue());
+                    else if (token != JsonToken.VALUE_NULL)
+                        record.getErrors().add("invalid year " + parser.getText());
+                }
+                else if ("type".equals(field) && token != JsonToken.VALUE_NULL) {
+                    try {
+                        wine.setType(Wine.Type.valueOf(parser.getText().toUpperCase()));
+                    }
+                    catch (IllegalArgumentException e) {
+                        record.getErrors().add("invalid type " + parser.getText());
+                    }
+                }
+                else
+                    parser.skipChildren();
+            }
+            return wine;
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+
+    static class JsonRecordWriter implements VineyardFormat.RecordWriter {
+
+        private final JsonGenerator generator;
+
+        JsonRecordWriter(Writer writer) throws IOException {
+            generator = JSON_FACTORY.createGenerator(writer);
+            generator.writeStartArray();
+        }
+
+        @Override
+        public void write(VineyardRecord record) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("uid", record.getUid());
+            generator.writeStringField("name", record.getName());
+            generator.writeStringField("address", record.getAddress());
+            generator.writeArrayFieldStart("wines");
+            for (VineyardRecord.WineRecord wine : record.getWines()) {
+                generator.writeStartObject();
+                generator.writeStringField("uid", wine.getUid());
+                generator.writeStringField("name", wine.getName());
+                if (wine.getYear() != null)
+                    generator.writeNumberField("year", wine.getYear());
+                else
+                    generator.writeNullField("year");
+                generator.writeStringField("type", wine.getType() != null ? wine.getType().name() : null);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.writeEndArray();
+            generator.close();
+        }
+    }
+}
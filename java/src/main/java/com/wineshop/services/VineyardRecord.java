@@ -0,0 +1,184 @@
+package com.wineshop.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.wineshop.entities.Vineyard;
+import com.wineshop.entities.Wine;
+
+/**
+ * Flat representation of a vineyard and its wines read from or written to an import/export file.
+ */
+public class VineyardRecord {
+
+    private static final int MAX_UID_LENGTH = 36;
+
+    private final int position;
+    private Long id;
+    private String uid;
+    private String name;
+    private String address;
+    private final List<WineRecord> wines = new ArrayList<WineRecord>();
+    private final List<String> errors = new ArrayList<String>();
+
+    public VineyardRecord(int position) {
+        this.position = position;
+    }
+
+    /**
+     * Line (CSV) or line of the start of the object (JSON) of the record in its source, for error reporting
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    Long getId() {
+        return id;
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public void setUid(String uid) {
+        this.uid = uid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public void setAddress(String address) {
+        this.address = address;
+    }
+
+    public List<WineRecord> getWines() {
+        return wines;
+    }
+
+    /**
+     * Parsing errors, a record with errors is rejected
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    static VineyardRecord of(Vineyard vineyard, List<Wine> wines) {
+        VineyardRecord record = new VineyardRecord(0);
+        record.id = vineyard.getId();
+        record.uid = vineyard.getUid();
+        record.name = vineyard.getName();
+        record.address = vineyard.getAddress() != null ? vineyard.getAddress().getAddress() : null;
+        for (Wine wine : wines) {
+            WineRecord wineRecord = new WineRecord();
+            wineRecord.setUid(wine.getUid());
+            wineRecord.setName(wine.getName());
+            wineRecord.setYear(wine.getYear());
+            wineRecord.setType(wine.getType());
+            record.wines.add(wineRecord);
+        }
+        return record;
+    }
+
+    /**
+     * Creates a new vineyard with the values of the record
+     */
+    Vineyard toVineyard() {
+        Vineyard vineyard = new Vineyard();
+        if (uid != null)
+            vineyard.setUid(uid);
+        vineyard.setWines(new ArrayList<Wine>());
+        applyTo(vineyard);
+        return vineyard;
+    }
+
+    /**
+     * Checks the uids, other values are checked by the Bean Validation constraints of the entities
+     */
+    boolean checkUids() {
+        if (uid != null && uid.length() > MAX_UID_LENGTH)
+            errors.add("uid too long: " + uid);
+        for (WineRecord wine : wines) {
+            if (wine.getUid() != null && wine.getUid().length() > MAX_UID_LENGTH)
+                errors.add("wine uid too long: " + wine.getUid());
+        }
+        return errors.isEmpty();
+    }
+
+    /**
+     * Copies the values of the record to a vineyard, wines are matched by uid and added when not found
+     */
+    void applyTo(Vineyard vineyard) {
+        vineyard.setName(name);
+        vineyard.getAddress().setAddress(address);
+        for (WineRecord wineRecord : wines) {
+            Wine wine = null;
+            if (wineRecord.getUid() != null) {
+                for (Wine w : vineyard.getWines()) {
+                    if (wineRecord.getUid().equals(w.getUid())) {
+                        wine = w;
+                        break;
+                    }
+                }
+            }
+            if (wine == null) {
+                wine = new Wine();
+                if (wineRecord.getUid() != null)
+                    wine.setUid(wineRecord.getUid());
+                wine.setVineyard(vineyard);
+                vineyard.getWines().add(wine);
+            }
+            wine.setName(wineRecord.getName());
+            wine.setYear(wineRecord.getYear());
+            wine.setType(wineRecord.getType());
+        }
+    }
+
+    public static class WineRecord {
+
+        private String uid;
+        private String name;
+        private Integer year;
+        private Wine.Type type;
+
+        public String getUid() {
+            return uid;
+        }
+
+        public void setUid(String uid) {
+            this.uid = uid;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Integer getYear() {
+            return year;
+        }
+
+        public void setYear(Integer year) {
+            this.year = year;
+        }
+
+        public Wine.Type getType() {
+            return type;
+        }
+
+        public void setType(Wine.Type type) {
+            this.type = type;
+        }
+    }
+}
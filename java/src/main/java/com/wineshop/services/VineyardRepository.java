@@ -8,7 +8,8 @@ import org.granite.tide.spring.data.FilterableJpaRepository;
 import com.wineshop.entities.Vineyard;
 
 @RemoteDestination
-@DataEnabled(topic="wineshopTopic", publish=PublishMode.ON_SUCCESS)
+/* Changes are published in coalesced batches by DataUpdatePublisher, clients only receive the vineyards they observe */
+@DataEnabled(topic="wineshopTopic", params=VineyardDataParams.class, publish=PublishMode.MANUAL)
 public interface VineyardRepository
-    extends FilterableJpaRepository<Vineyard, Long> {
+    extends FilterableJpaRepository<Vineyard, Long>, VineyardRepositoryCustom {
 }
\ No newline at end of file
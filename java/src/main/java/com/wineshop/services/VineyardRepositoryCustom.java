@@ -0,0 +1,53 @@
+package com.wineshop.services;
+
+import java.util.List;
+
+import com.wineshop.data.VineyardChanges;
+import com.wineshop.entities.Vineyard;
+
+/**
+ * Hand-written queries of {@link VineyardRepository}, implemented by {@link VineyardRepositoryImpl}.
+ */
+public interface VineyardRepositoryCustom {
+
+    /**
+     * Keyset (seek) pagination: returns the page following the row identified by
+     * <code>lastValues</code>/<code>lastId</code>, so that the cost of a page does not
+     * depend on its position in the result.
+     *
+     * Rows are ordered by the sort properties then by id, so the order is deterministic and no row
+     * is skipped or repeated between pages. The sorts by <code>name</code>, <code>address</code>,
+     * <code>address, name</code>, <code>wineCount</code> and <code>wineCount, name</code> in a single
+     * direction are backed by an index, as the order by always ends with the id.
+     *
+     * @param name name prefix, matched case and accent insensitively, or null for all vineyards
+     * @param sort sort properties (<code>name</code>, <code>address</code> or <code>wineCount</code>), or null to sort by name
+     * @param desc true for descending order of each sort property, missing values are ascending
+     * @param lastValues values of the sort properties of the last row of the previous page, ignored for the first page
+     * @param lastId id of the last row of the previous page, or null for the first page
+     * @param maxResults page size
+     * @return the next page of vineyards
+     */
+    public List<Vineyard> findByNameAfter(String name, String[] sort, boolean[] desc, Object[] lastValues, Long lastId, int maxResults);
+
+    /**
+     * Same page as {@link #findByNameAfter} with the wines of the vineyards loaded by a single additional query,
+     * for clients that display the wines and would otherwise lazy-load them one vineyard at a time.
+     */
+    public List<Vineyard> findByNameAfterWithWines(String name, String[] sort, boolean[] desc, Object[] lastValues, Long lastId, int maxResults);
+
+    /**
+     * Vineyard with its wines, used by clients to reload a vineyard for which they missed data updates
+     */
+    public Vineyard findWithWines(Long id);
+
+    /**
+     * Changes of vineyards and wines since a previous synchronization, used by clients to update their data
+     * after a reconnection instead of reloading it
+     *
+     * @param since high-water mark returned by the previous call, or null to get the initial high-water mark
+     * @param maxResults maximum number of changed vineyards, beyond which the client is asked to reload its data
+     * @return changes with the high-water mark for the next call
+     */
+    public VineyardChanges findChangesSince(Long since, int maxResults);
+}
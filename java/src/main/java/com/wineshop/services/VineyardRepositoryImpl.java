@@ -0,0 +1,163 @@
+package com.wineshop.services;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import com.wineshop.data.Tombstone;
+import com.wineshop.data.VineyardChanges;
+import com.wineshop.entities.Vineyard;
+import com.wineshop.entities.Wine;
+
+/**
+ * Implementation of {@link VineyardRepositoryCustom}, detected by Spring Data from its name.
+ */
+public class VineyardRepositoryImpl implements VineyardRepositoryCustom {
+
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private static final int MAX_TOMBSTONES = 5000;
+
+    /* A transaction that modified entities before a synchronization may commit after it,
+       the changes of this last period are returned again by the next synchronization.
+       Entities are stamped when they are flushed, not when the transaction commits: the changes of a
+       transaction committing more than this after its flush are missed by the clients synchronizing
+       in between, which only get them from the data updates or when they reload their data */
+    private static final long SYNC_OVERLAP_MILLIS = 10000L;
+
+    private static final String PAGES_CACHE_REGION = "com.wineshop.services.VineyardRepository.pages";
+
+    private static final Map<String, String> SORT_KEYS = new HashMap<String, String>();
+    static {
+        SORT_KEYS.put("name", "v.name");
+        SORT_KEYS.put("address", "v.address.address");
+        SORT_KEYS.put("wineCount", "v.wineCount");
+    }
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly=true)
+    public List<Vineyard> findByNameAfter(String name, String[] sort, boolean[] desc, Object[] lastValues, Long lastId, int maxResults) {
+        Keyset keyset = new Keyset(SORT_KEYS, "name", sort, desc, "v.id");
+        if (lastId != null)
+            keyset.checkLastValues(lastValues);
+
+        StringBuilder jpql = new StringBuilder("select v from Vineyard v");
+        String sep = " where ";
+        if (name != null && name.length() > 0) {
+            jpql.append(sep).append("v.searchName like :name escape '\\'");
+            sep = " and ";
+        }
+        if (lastId != null) {
+            jpql.append(sep);
+            keyset.appendAfter(jpql);
+        }
+        keyset.appendOrderBy(jpql);
+
+        TypedQuery<Vineyard> query = entityManager.createQuery(jpql.toString(), Vineyard.class);
+        if (name != null && name.length() > 0)
+            query.setParameter("name", likePrefix(name));
+        if (lastId != null)
+            keyset.setParameters(query, lastValues, lastId);
+        query.setMaxResults(Math.max(1, Math.min(maxResults, MAX_PAGE_SIZE)));
+        query.setHint("org.hibernate.cacheable", Boolean.TRUE);
+        query.setHint("org.hibernate.cacheRegion", PAGES_CACHE_REGION);
+        List<Vineyard> vineyards = query.getResultList();
+        if (lastId == null)
+            VineyardDataParams.observeFirstPage(name, vineyards);
+        else
+            VineyardDataParams.observe(vineyards);
+        return vineyards;
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public List<Vineyard> findByNameAfterWithWines(String name, String[] sort, boolean[] desc, Object[] lastValues, Long lastId, int maxResults) {
+        List<Vineyard> vineyards = findByNameAfter(name, sort, desc, lastValues, lastId, maxResults);
+        if (vineyards.isEmpty())
+            return vineyards;
+
+        // Fetch joins cannot be paginated in the database, the page is selected first and its wines fetched afterwards.
+        // The query returns the same instances from the persistence context, now with initialized wines.
+        entityManager.createQuery("select distinct v from Vineyard v left join fetch v.wines where v in :vineyards", Vineyard.class)
+            .setParameter("vineyards", vineyards)
+            .getResultList();
+        return vineyards;
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public Vineyard findWithWines(Long id) {
+        List<Vineyard> vineyards = entityManager
+            .createQuery("select distinct v from Vineyard v left join fetch v.wines where v.id = :id", Vineyard.class)
+            .setParameter("id", id)
+            .getResultList();
+        return vineyards.isEmpty() ? null : vineyards.get(0);
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public VineyardChanges findChangesSince(Long since, int maxResults) {
+        long now = System.currentTimeMillis();
+        VineyardChanges changes = new VineyardChanges();
+        changes.setUntil(now);
+        if (since == null || since < now - Tombstone.RETENTION_MILLIS) {
+            changes.setReset(true);
+            return changes;
+        }
+
+        long from = since - SYNC_OVERLAP_MILLIS;
+        int max = Math.max(1, Math.min(maxResults, MAX_PAGE_SIZE));
+        List<Long> ids = entityManager.createQuery("select v.id from Vineyard v where v.lastModified > :from"
+                + " or v.id in (select w.vineyard.id from Wine w where w.lastModified > :from)", Long.class)
+            .setParameter("from", from)
+            .setMaxResults(max + 1)
+            .getResultList();
+        // Entities deleted then imported again with the same uid are not reported as deleted
+        List<Object[]> tombstones = entityManager.createQuery("select distinct t.type, t.uid from Tombstone t where t.removed > :from"
+                + " and not exists (select v.id from Vineyard v where v.uid = t.uid)"
+                + " and not exists (select w.id from Wine w where w.uid = t.uid)", Object[].class)
+            .setParameter("from", from)
+            .setMaxResults(MAX_TOMBSTONES + 1)
+            .getResultList();
+        // Reloading is cheaper for the client than receiving most of the data as changes
+        if (ids.size() > max || tombstones.size() > MAX_TOMBSTONES) {
+            changes.setReset(true);
+            return changes;
+        }
+
+        if (!ids.isEmpty()) {
+            List<Vineyard> vineyards = entityManager
+                .createQuery("select distinct v from Vineyard v left join fetch v.wines where v.id in :ids", Vineyard.class)
+                .setParameter("ids", ids)
+                .getResultList();
+            VineyardDataParams.observe(vineyards);
+            changes.setVineyards(vineyards);
+        }
+        for (Object[] tombstone : tombstones) {
+            if (Vineyard.class.getSimpleName().equals(tombstone[0]))
+                changes.getRemovedVineyards().add((String)tombstone[1]);
+            else if (Wine.class.getSimpleName().equals(tombstone[0]))
+                changes.getRemovedWines().add((String)tombstone[1]);
+        }
+        return changes;
+    }
+
+    static String likePrefix(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 1);
+        for (char c : Vineyard.normalize(value).toCharArray()) {
+            if (c == '%' || c == '_' || c == '\\')
+                sb.append('\\');
+            sb.append(c);
+        }
+        return sb.append('%').toString();
+    }
+}
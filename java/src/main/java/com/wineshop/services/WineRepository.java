@@ -0,0 +1,15 @@
+package com.wineshop.services;
+
+import org.granite.messaging.service.annotations.RemoteDestination;
+import org.granite.tide.data.DataEnabled;
+import org.granite.tide.data.DataEnabled.PublishMode;
+import org.granite.tide.spring.data.FilterableJpaRepository;
+
+import com.wineshop.entities.Wine;
+
+@RemoteDestination
+/* Changes are published in coalesced batches by DataUpdatePublisher, clients only receive the vineyards they observe */
+@DataEnabled(topic="wineshopTopic", params=VineyardDataParams.class, publish=PublishMode.MANUAL)
+public interface WineRepository
+    extends FilterableJpaRepository<Wine, Long>, WineRepositoryCustom {
+}
@@ -0,0 +1,28 @@
+package com.wineshop.services;
+
+import java.util.List;
+
+import com.wineshop.entities.Wine;
+import com.wineshop.entities.WineFilter;
+
+/**
+ * Hand-written queries of {@link WineRepository}, implemented by {@link WineRepositoryImpl}.
+ */
+public interface WineRepositoryCustom {
+
+    /**
+     * Keyset (seek) pagination of the wines matching a filter, see {@link VineyardRepositoryCustom#findByNameAfter}
+     *
+     * The wines of a vineyard in the default order (by id) are read from an index, so that displaying
+     * a vineyard with many wines costs a single page whatever its number of wines.
+     *
+     * @param filter vineyard, range of years and type of the wines
+     * @param sort sort properties (<code>name</code>, <code>year</code> or <code>type</code>), or null to sort by id
+     * @param desc true for descending order of each sort property, missing values are ascending
+     * @param lastValues values of the sort properties of the last row of the previous page, ignored for the first page
+     * @param lastId id of the last row of the previous page, or null for the first page
+     * @param maxResults page size
+     * @return the next page of wines
+     */
+    public List<Wine> findByFilterAfter(WineFilter filter, String[] sort, boolean[] desc, Object[] lastValues, Long lastId, int maxResults);
+}
@@ -0,0 +1,79 @@
+package com.wineshop.services;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import com.wineshop.entities.Wine;
+import com.wineshop.entities.WineFilter;
+
+/**
+ * Implementation of {@link WineRepositoryCustom}, detected by Spring Data from its name.
+ */
+public class WineRepositoryImpl implements WineRepositoryCustom {
+
+    private static final int MAX_PAGE_SIZE = 500;
+
+    /* Name and year are optional, null values are sorted as empty names and year 0 so they can be compared in the keyset */
+    private static final Map<String, String> SORT_KEYS = new HashMap<String, String>();
+    static {
+        SORT_KEYS.put("name", "coalesce(w.name, '')");
+        SORT_KEYS.put("year", "coalesce(w.year, 0)");
+        SORT_KEYS.put("type", "w.type");
+    }
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly=true)
+    public List<Wine> findByFilterAfter(WineFilter filter, String[] sort, boolean[] desc, Object[] lastValues, Long lastId, int maxResults) {
+        Keyset keyset = new Keyset(SORT_KEYS, null, sort, desc, "w.id");
+        if (lastId != null)
+            keyset.checkLastValues(lastValues);
+
+        StringBuilder jpql = new StringBuilder("select w from Wine w");
+        String sep = " where ";
+        if (filter != null && filter.getVineyardId() != null) {
+            jpql.append(sep).append("w.vineyard.id = :vineyardId");
+            sep = " and ";
+        }
+        if (filter != null && filter.getMinYear() != null) {
+            jpql.append(sep).append("w.year >= :minYear");
+            sep = " and ";
+        }
+        if (filter != null && filter.getMaxYear() != null) {
+            jpql.append(sep).append("w.year <= :maxYear");
+            sep = " and ";
+        }
+        if (filter != null && filter.getType() != null) {
+            jpql.append(sep).append("w.type = :type");
+            sep = " and ";
+        }
+        if (lastId != null) {
+            jpql.append(sep);
+            keyset.appendAfter(jpql);
+        }
+        keyset.appendOrderBy(jpql);
+
+        TypedQuery<Wine> query = entityManager.createQuery(jpql.toString(), Wine.class);
+        if (filter != null && filter.getVineyardId() != null)
+            query.setParameter("vineyardId", filter.getVineyardId());
+        if (filter != null && filter.getMinYear() != null)
+            query.setParameter("minYear", filter.getMinYear());
+        if (filter != null && filter.getMaxYear() != null)
+            query.setParameter("maxYear", filter.getMaxYear());
+        if (filter != null && filter.getType() != null)
+            query.setParameter("type", filter.getType());
+        if (lastId != null)
+            keyset.setParameters(query, lastValues, lastId);
+        query.setMaxResults(Math.max(1, Math.min(maxResults, MAX_PAGE_SIZE)));
+        return query.getResultList();
+    }
+}
@@ -0,0 +1,97 @@
+package com.wineshop.web;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.wineshop.metrics.RequestMetrics;
+import com.wineshop.metrics.ServerMetrics;
+
+/**
+ * Records the latency and the request/response sizes of the AMF requests on /graniteamf/*,
+ * with the number of SQL statements they prepared. The time not spent in repository calls
+ * (AMF deserialization and serialization, security, Tide) is recorded as amf.overhead.
+ */
+@Component("amfMetricsFilter")
+public class AmfMetricsFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private ServerMetrics metrics;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        RequestMetrics requestMetrics = RequestMetrics.begin();
+        CountingResponse countingResponse = new CountingResponse(response);
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, countingResponse);
+        }
+        finally {
+            long micros = ServerMetrics.micros(start);
+            RequestMetrics.end();
+            metrics.latency("amf.request").record(micros);
+            metrics.latency("amf.overhead").record(micros - requestMetrics.getServiceMicros());
+            metrics.count("amf.statements").record(requestMetrics.getStatements());
+            if (request.getContentLength() >= 0)
+                metrics.bytes("amf.request.bytes").record(request.getContentLength());
+            metrics.bytes("amf.response.bytes").record(countingResponse.getCount());
+        }
+    }
+
+    /**
+     * Counts the bytes written to the response body, AMF responses are binary and use the output stream
+     */
+    private static class CountingResponse extends HttpServletResponseWrapper {
+
+        private long count = 0;
+        private ServletOutputStream outputStream;
+
+        public CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                final ServletOutputStream delegate = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        delegate.write(b);
+                        count++;
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        delegate.write(b, off, len);
+                        count += len;
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        delegate.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        delegate.close();
+                    }
+                };
+            }
+            return outputStream;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.wineshop.web;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRegistration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.WebApplicationInitializer;
+
+/**
+ * Registers the Gravity WebSocket servlet on /websocketamf/* for the servlet container running the application.
+ * 
+ * The context parameter (or system property) gravity.websocket selects the mode:
+ * <ul>
+ * <li>auto (default): the servlet matching the container (Jetty 8, Tomcat 7, GlassFish), none for other containers</li>
+ * <li>false: no WebSocket endpoint, clients use long-polling on /gravityamf/*</li>
+ * <li>a servlet class name: that servlet</li>
+ * </ul>
+ * Clients fall back to long-polling when the endpoint is not available.
+ */
+public class GravityWebSocketInitializer implements WebApplicationInitializer {
+
+    private static final Logger log = LoggerFactory.getLogger(GravityWebSocketInitializer.class);
+
+    public static final String MODE_PARAM = "gravity.websocket";
+    public static final String SERVLET_NAME = "WebSocketServlet";
+    public static final String URL_PATTERN = "/websocketamf/*";
+
+    @Override
+    public void onStartup(ServletContext servletContext) throws ServletException {
+        String mode = System.getProperty(MODE_PARAM, servletContext.getInitParameter(MODE_PARAM));
+        if (mode == null || mode.trim().length() == 0)
+            mode = "auto";
+        mode = mode.trim();
+        if ("false".equalsIgnoreCase(mode)) {
+            log.info("Gravity WebSocket disabled, clients use long-polling");
+            return;
+        }
+
+        String servletClassName = "auto".equalsIgnoreCase(mode) ? servletClassName(servletContext.getServerInfo()) : mode;
+        if (servletClassName == null) {
+            log.info("No Gravity WebSocket servlet for {}, clients use long-polling", servletContext.getServerInfo());
+            return;
+        }
+        if (!ClassUtils.isPresent(servletClassName, getClass().getClassLoader())) {
+            log.warn("Gravity WebSocket servlet {} not available, clients use long-polling", servletClassName);
+            return;
+        }
+
+        ServletRegistration.Dynamic registration = servletContext.addServlet(SERVLET_NAME, servletClassName);
+        if (registration == null) {
+            log.info("Gravity WebSocket servlet already declared in web.xml");
+            return;
+        }
+        registration.setLoadOnStartup(1);
+        registration.addMapping(URL_PATTERN);
+        log.info("Gravity WebSocket servlet {} registered on {}", servletClassName, URL_PATTERN);
+    }
+
+    private static String servletClassName(String serverInfo) {
+        String server = serverInfo != null ? serverInfo.toLowerCase() : "";
+        if (server.startsWith("jetty/8"))
+            return "org.granite.gravity.jetty8.JettyWebSocketServlet";
+        if (server.startsWith("apache tomcat/7"))
+            return "org.granite.gravity.tomcat.TomcatWebSocketServlet";
+        if (server.contains("glassfish"))
+            return "org.granite.gravity.glassfish.GlassFishWebSocketServlet";
+        return null;
+    }
+}
@@ -0,0 +1,69 @@
+package com.wineshop.web;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.HttpRequestHandler;
+
+import com.wineshop.data.DataUpdatePublisher;
+import com.wineshop.metrics.ServerMetrics;
+
+/**
+ * HTTP endpoint (GET /metrics) returning the server metrics as text, one line per histogram and counter,
+ * followed by the publisher queue and the JVM thread counts.
+ * Only answers local requests unless the property metrics.http.allowRemote is true.
+ */
+@Component("metricsHandler")
+public class MetricsHandler implements HttpRequestHandler {
+
+    @Autowired
+    private ServerMetrics metrics;
+
+    @Autowired
+    private DataUpdatePublisher publisher;
+
+    @Value("${metrics.http.allowRemote:false}")
+    private boolean allowRemote;
+
+    @Override
+    public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (!allowRemote && !isLocal(request.getRemoteAddr())) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        if (!"GET".equals(request.getMethod())) {
+            response.setHeader("Allow", "GET");
+            response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+
+        response.setCharacterEncoding("UTF-8");
+        response.setContentType("text/plain");
+        response.setHeader("Cache-Control", "no-cache");
+        response.getWriter().write(metrics.getSummary());
+        response.getWriter().write("gravity.channels: " + publisher.getChannels() + "\n");
+        response.getWriter().write("publish.queuedBatches: " + publisher.getQueuedBatches() + "\n");
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        response.getWriter().write("jvm.threads: " + threads.getThreadCount() + "\n");
+        response.getWriter().write("jvm.threads.peak: " + threads.getPeakThreadCount() + "\n");
+    }
+
+    private static boolean isLocal(String address) {
+        try {
+            return address != null && InetAddress.getByName(address).isLoopbackAddress();
+        }
+        catch (UnknownHostException e) {
+            return false;
+        }
+    }
+}
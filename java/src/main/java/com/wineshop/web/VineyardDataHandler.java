@@ -0,0 +1,115 @@
+package com.wineshop.web;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.HttpRequestHandler;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.wineshop.services.ImportResult;
+import com.wineshop.services.VineyardFormat;
+import com.wineshop.services.VineyardImportExport;
+
+/**
+ * HTTP endpoint of the bulk import (POST) and export (GET) of vineyards.
+ * The format is given by the format parameter (csv or json) or the content type of the request, CSV by default.
+ * Restricted to administrators by the springSecurityFilterChain mapped to it in web.xml.
+ */
+@Component("vineyardDataHandler")
+public class VineyardDataHandler implements HttpRequestHandler {
+
+    private static final String ENCODING = "UTF-8";
+
+    @Autowired
+    private VineyardImportExport importExport;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    @Override
+    public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        VineyardFormat format = format(request);
+        if (format == null) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unsupported format");
+            return;
+        }
+
+        if ("GET".equals(request.getMethod()))
+            export(format, response);
+        else if ("POST".equals(request.getMethod()))
+            doImport(format, request, response);
+        else {
+            response.setHeader("Allow", "GET, POST");
+            response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+        }
+    }
+
+    private void export(VineyardFormat format, HttpServletResponse response) throws IOException {
+        response.setCharacterEncoding(ENCODING);
+        response.setContentType(format.getContentType());
+        response.setHeader("Content-Disposition", "attachment; filename=vineyards." + format.name().toLowerCase());
+        VineyardFormat.RecordWriter writer = format.writer(response.getWriter());
+        try {
+            importExport.exportVineyards(writer);
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    private void doImport(VineyardFormat format, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (request.getCharacterEncoding() == null)
+            request.setCharacterEncoding(ENCODING);
+
+        ImportResult result;
+        VineyardFormat.RecordReader reader;
+        try {
+            reader = format.reader(request.getReader());
+        }
+        catch (IOException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        try {
+            result = importExport.importVineyards(reader);
+        }
+        finally {
+            reader.close();
+        }
+
+        response.setCharacterEncoding(ENCODING);
+        response.setContentType("application/json");
+        JsonGenerator generator = jsonFactory.createGenerator(response.getWriter());
+        generator.writeStartObject();
+        generator.writeNumberField("created", result.getCreated());
+        generator.writeNumberField("updated", result.getUpdated());
+        generator.writeNumberField("rejected", result.getRejected());
+        generator.writeArrayFieldStart("errors");
+        for (String error : result.getErrors())
+            generator.writeString(error);
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    private VineyardFormat format(HttpServletRequest request) {
+        String format = request.getParameter("format");
+        if (format != null) {
+            try {
+                return VineyardFormat.valueOf(format.toUpperCase());
+            }
+            catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        String contentType = request.getContentType();
+        if (contentType != null && contentType.startsWith(VineyardFormat.JSON.getContentType()))
+            return VineyardFormat.JSON;
+        return VineyardFormat.CSV;
+    }
+}
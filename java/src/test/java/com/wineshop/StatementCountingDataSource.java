@@ -0,0 +1,89 @@
+package com.wineshop;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Data source counting the statements sent to the database: each execute and each executeBatch
+ * is one round-trip, statements added to a batch are counted separately.
+ */
+public class StatementCountingDataSource extends DelegatingDataSource {
+
+    private final AtomicInteger roundTrips = new AtomicInteger();
+
+    private final AtomicInteger batchedStatements = new AtomicInteger();
+
+    public StatementCountingDataSource(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    public int getRoundTrips() {
+        return roundTrips.get();
+    }
+
+    public int getBatchedStatements() {
+        return batchedStatements.get();
+    }
+
+    public void reset() {
+        roundTrips.set(0);
+        batchedStatements.set(0);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(super.getConnection(username, password));
+    }
+
+    private Connection wrap(final Connection connection) {
+        return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    Object result = call(connection, method, args);
+                    if (result instanceof Statement)
+                        return wrap((Statement)result, method.getReturnType());
+                    return result;
+                }
+            });
+    }
+
+    private Object wrap(final Statement statement, Class<?> type) {
+        return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { type },
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if (name.startsWith("execute"))
+                        roundTrips.incrementAndGet();
+                    else if (name.equals("addBatch"))
+                        batchedStatements.incrementAndGet();
+                    return call(statement, method, args);
+                }
+            });
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.wineshop.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.granite.tide.data.DataContext.EntityUpdateType;
+import org.junit.After;
+import org.junit.Test;
+
+import com.wineshop.data.DataUpdatePublisher.OverflowPolicy;
+import com.wineshop.entities.Vineyard;
+import com.wineshop.metrics.ServerMetrics;
+
+/**
+ * Simulates a subscriber that stalls the dispatch of data updates: committing transactions must not
+ * wait for it, the changes kept meanwhile must stay bounded, and everything that was not dropped
+ * by the overflow policy must be sent once the subscriber resumes.
+ */
+public class DataUpdatePublisherTest {
+
+    private static final int MAX_BATCH_SIZE = 10;
+    private static final int MAX_QUEUED_BATCHES = 2;
+    private static final int MAX_PENDING_UPDATES = 50;
+
+    private final CountDownLatch stalled = new CountDownLatch(1);
+
+    private final List<DataUpdates.DataUpdate> dispatched = new ArrayList<DataUpdates.DataUpdate>();
+
+    private StalledPublisher publisher;
+
+    @After
+    public void destroyPublisher() {
+        stalled.countDown();
+        if (publisher != null)
+            publisher.destroy();
+    }
+
+    @Test
+    public void commitsDoNotWaitForStalledSubscriber() throws Exception {
+        publisher = publisher(OverflowPolicy.COALESCE);
+
+        for (int i = 0; i < 1000; i++) {
+            publisher.publish(updates(EntityUpdateType.UPDATE, 1));
+            assertTrue("Queued batches: " + publisher.getQueuedBatches(), publisher.getQueuedBatches() <= MAX_QUEUED_BATCHES);
+            assertTrue("Pending updates: " + publisher.getPendingUpdates(), publisher.getPendingUpdates() <= MAX_PENDING_UPDATES);
+        }
+
+        stalled.countDown();
+        awaitSent();
+        assertEquals(1000, dispatched().size() + publisher.getDroppedUpdates());
+    }
+
+    @Test
+    public void fullBatchIsSentWhenSubscriberResumes() throws Exception {
+        publisher = publisher(OverflowPolicy.COALESCE);
+        fillQueue();
+
+        /* A full batch arriving while the queue is full, and nothing committed afterwards */
+        publisher.publish(updates(EntityUpdateType.UPDATE, MAX_BATCH_SIZE));
+
+        stalled.countDown();
+        awaitSent();
+        assertEquals(0, publisher.getDroppedUpdates());
+        assertEquals((MAX_QUEUED_BATCHES + 2) * MAX_BATCH_SIZE, dispatched().size());
+    }
+
+    @Test
+    public void dropKeepsDeletions() throws Exception {
+        publisher = publisher(OverflowPolicy.DROP);
+        fillQueue();
+
+        publisher.publish(updates(EntityUpdateType.REMOVE, 5));
+        publisher.publish(updates(EntityUpdateType.UPDATE, MAX_BATCH_SIZE));
+
+        stalled.countDown();
+        awaitSent();
+        assertEquals(MAX_BATCH_SIZE, publisher.getDroppedUpdates());
+        int removed = 0;
+        for (DataUpdates.DataUpdate update : dispatched()) {
+            if (update.getType() == EntityUpdateType.REMOVE)
+                removed++;
+        }
+        assertEquals(5, removed);
+    }
+
+    @Test
+    public void disconnectDropsPendingUpdates() throws Exception {
+        publisher = publisher(OverflowPolicy.DISCONNECT);
+        fillQueue();
+
+        publisher.publish(updates(EntityUpdateType.REMOVE, 5));
+        publisher.publish(updates(EntityUpdateType.UPDATE, MAX_BATCH_SIZE));
+        assertEquals(0, publisher.getPendingUpdates());
+
+        stalled.countDown();
+        awaitSent();
+        assertEquals(MAX_BATCH_SIZE + 5, publisher.getDroppedUpdates());
+    }
+
+    /**
+     * Stalls the dispatch of a first batch, then queues the maximum number of batches
+     */
+    private void fillQueue() throws InterruptedException {
+        publisher.publish(updates(EntityUpdateType.UPDATE, MAX_BATCH_SIZE));
+        publisher.dispatching.await(5, TimeUnit.SECONDS);
+        for (int i = 0; i < MAX_QUEUED_BATCHES; i++)
+            publisher.publish(updates(EntityUpdateType.UPDATE, MAX_BATCH_SIZE));
+        assertEquals(MAX_QUEUED_BATCHES, publisher.getQueuedBatches());
+    }
+
+    private StalledPublisher publisher(OverflowPolicy overflowPolicy) {
+        StalledPublisher publisher = new StalledPublisher(overflowPolicy);
+        publisher.afterPropertiesSet();
+        return publisher;
+    }
+
+    private static DataUpdates updates(EntityUpdateType type, int count) {
+        DataUpdates updates = new DataUpdates();
+        for (int i = 0; i < count; i++) {
+            Vineyard vineyard = new Vineyard();
+            vineyard.setName("Vineyard " + i);
+            updates.add(type, vineyard);
+        }
+        return updates;
+    }
+
+    /**
+     * Waits until every update received by the publisher has been dispatched or dropped, updates are
+     * only dropped while publishing in these tests
+     */
+    private void awaitSent() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        synchronized (dispatched) {
+            while (dispatched.size() + publisher.getDroppedUpdates() < publisher.getReceivedUpdates()) {
+                long remaining = deadline - System.currentTimeMillis();
+                assertTrue("Updates not sent", remaining > 0);
+                dispatched.wait(remaining);
+            }
+        }
+    }
+
+    private List<DataUpdates.DataUpdate> dispatched() {
+        synchronized (dispatched) {
+            return new ArrayList<DataUpdates.DataUpdate>(dispatched);
+        }
+    }
+
+    private class StalledPublisher extends DataUpdatePublisher {
+
+        private final CountDownLatch dispatching = new CountDownLatch(1);
+
+        StalledPublisher(OverflowPolicy overflowPolicy) {
+            super("testTopic", 20, MAX_BATCH_SIZE, MAX_QUEUED_BATCHES, MAX_PENDING_UPDATES, overflowPolicy, new ServerMetrics());
+        }
+
+        @Override
+        boolean dispatch(DataUpdates batch) {
+            dispatching.countDown();
+            try {
+                stalled.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            synchronized (dispatched) {
+                for (DataUpdates.DataUpdate update : batch)
+                    dispatched.add(update);
+                dispatched.notifyAll();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.wineshop.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.granite.tide.data.DataContext.EntityUpdateType;
+import org.junit.Test;
+
+import com.wineshop.entities.Vineyard;
+import com.wineshop.entities.Wine;
+
+/**
+ * Checks the net change kept for each entity when changes are merged into a batch, and the vineyards encoded for them
+ */
+public class DataUpdatesTest {
+
+    @Test
+    public void updatesAreMergedIntoLatestState() {
+        Vineyard first = vineyard("uid-1");
+        Vineyard latest = vineyard("uid-1");
+        DataUpdates updates = new DataUpdates();
+        updates.add(EntityUpdateType.UPDATE, first);
+        updates.add(EntityUpdateType.UPDATE, latest);
+
+        assertEquals(1, updates.size());
+        assertEquals(EntityUpdateType.UPDATE, single(updates).getType());
+        assertSame(latest, single(updates).getEntity());
+    }
+
+    @Test
+    public void creationFollowedByUpdatesStaysCreation() {
+        DataUpdates updates = new DataUpdates();
+        updates.add(EntityUpdateType.PERSIST, vineyard("uid-1"));
+        updates.add(EntityUpdateType.UPDATE, vineyard("uid-1"));
+
+        assertEquals(EntityUpdateType.PERSIST, single(updates).getType());
+    }
+
+    @Test
+    public void creationFollowedByDeletionCancelsOut() {
+        DataUpdates updates = new DataUpdates();
+        updates.add(EntityUpdateType.PERSIST, vineyard("uid-1"));
+        updates.add(EntityUpdateType.REMOVE, vineyard("uid-1"));
+
+        assertTrue(updates.isEmpty());
+    }
+
+    @Test
+    public void deletionFollowedByCreationIsUpdate() {
+        Vineyard created = vineyard("uid-1");
+        DataUpdates updates = new DataUpdates();
+        updates.add(EntityUpdateType.REMOVE, vineyard("uid-1"));
+        updates.add(EntityUpdateType.PERSIST, created);
+
+        assertEquals(EntityUpdateType.UPDATE, single(updates).getType());
+        assertSame(created, single(updates).getEntity());
+
+        /* Deleted again, clients must still remove it */
+        updates.add(EntityUpdateType.REMOVE, vineyard("uid-1"));
+        assertEquals(EntityUpdateType.REMOVE, single(updates).getType());
+    }
+
+    @Test
+    public void mergedBatchesKeepDeletions() {
+        DataUpdates updates = new DataUpdates();
+        updates.add(EntityUpdateType.UPDATE, vineyard("uid-1"));
+        DataUpdates later = new DataUpdates();
+        later.add(EntityUpdateType.REMOVE, vineyard("uid-1"));
+        updates.addAll(later);
+
+        assertEquals(EntityUpdateType.REMOVE, single(updates).getType());
+    }
+
+    /**
+     * The version of the previous update is set on the published copy, not on the entity of the persistence context
+     */
+    @Test
+    public void encodedVineyardIsCopy() {
+        Vineyard vineyard = vineyard("uid-1");
+        DataUpdates updates = new DataUpdates();
+        updates.add(EntityUpdateType.PERSIST, vineyard);
+        Map<Serializable, Integer> publishedVersions = new HashMap<Serializable, Integer>();
+        publishedVersions.put(vineyard.getId(), 3);
+
+        Vineyard published = (Vineyard)new DataUpdateEncoder(updates, publishedVersions).encode(single(updates));
+        assertEquals(vineyard.getUid(), published.getUid());
+        assertSame(vineyard.getWines(), published.getWines());
+        assertEquals(Integer.valueOf(3), published.getPreviousVersion());
+        assertNull(vineyard.getPreviousVersion());
+    }
+
+    private static DataUpdates.DataUpdate single(DataUpdates updates) {
+        assertEquals(1, updates.size());
+        return updates.iterator().next();
+    }
+
+    private static Vineyard vineyard(String uid) {
+        Vineyard vineyard = new Vineyard();
+        vineyard.setUid(uid);
+        vineyard.setName("Domaine " + uid);
+        vineyard.setWines(new ArrayList<Wine>());
+        return vineyard;
+    }
+}
@@ -0,0 +1,76 @@
+package com.wineshop.services;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.GenericXmlApplicationContext;
+
+import com.wineshop.data.VineyardChanges;
+import com.wineshop.entities.Address;
+import com.wineshop.entities.Vineyard;
+import com.wineshop.entities.Wine;
+
+/**
+ * Checks the tombstones of deleted vineyards returned by {@link VineyardRepositoryCustom#findChangesSince},
+ * in particular for vineyards imported again with the uid they had before their deletion
+ */
+public class VineyardChangesTest {
+
+    private static GenericXmlApplicationContext context;
+
+    private static VineyardRepository vineyardRepository;
+
+    @BeforeClass
+    public static void setUpContext() {
+        System.setProperty("test.db", "changes");
+        context = new GenericXmlApplicationContext("classpath:test-context.xml");
+        vineyardRepository = context.getBean(VineyardRepository.class);
+    }
+
+    @AfterClass
+    public static void closeContext() {
+        context.close();
+    }
+
+    @Test
+    public void reportsDeletedVineyards() {
+        long since = System.currentTimeMillis();
+        Vineyard vineyard = vineyardRepository.save(vineyard("Domaine Supprimé", null));
+        vineyardRepository.delete(vineyard.getId());
+
+        VineyardChanges changes = vineyardRepository.findChangesSince(since, 100);
+        assertTrue(changes.getRemovedVineyards().contains(vineyard.getUid()));
+    }
+
+    @Test
+    public void vineyardImportedAgainCanBeDeletedAgain() {
+        long since = System.currentTimeMillis();
+        Vineyard vineyard = vineyardRepository.save(vineyard("Domaine Réimporté", null));
+        String uid = vineyard.getUid();
+        vineyardRepository.delete(vineyard.getId());
+
+        Vineyard imported = vineyardRepository.save(vineyard("Domaine Réimporté", uid));
+        VineyardChanges changes = vineyardRepository.findChangesSince(since, 100);
+        assertFalse("Imported vineyard reported as deleted", changes.getRemovedVineyards().contains(uid));
+
+        vineyardRepository.delete(imported.getId());
+        changes = vineyardRepository.findChangesSince(since, 100);
+        assertTrue(changes.getRemovedVineyards().contains(uid));
+    }
+
+    private static Vineyard vineyard(String name, String uid) {
+        Vineyard vineyard = new Vineyard();
+        if (uid != null)
+            vineyard.setUid(uid);
+        vineyard.setName(name);
+        vineyard.setAddress(new Address());
+        vineyard.getAddress().setAddress("1 route des Vignes");
+        vineyard.setWines(new ArrayList<Wine>());
+        return vineyard;
+    }
+}
@@ -0,0 +1,120 @@
+package com.wineshop.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import com.wineshop.entities.Wine;
+
+/**
+ * Reads and writes CSV records: quoted fields, grouping of the wine rows of a vineyard and parsing errors
+ */
+public class VineyardCsvTest {
+
+    private static final String HEADER = "vineyard_uid,vineyard,address,wine_uid,wine,year,type\r\n";
+
+    @Test
+    public void readsQuotedFields() throws IOException {
+        VineyardFormat.RecordReader reader = reader(HEADER
+            + "v1,\"Domaine \"\"Les Vignes\"\", Bordeaux\",\"1 route des Vins\n33000 Bordeaux\",w1,\"Cuvee, \"\"prestige\"\"\",2005,red\r\n");
+
+        VineyardRecord record = reader.read();
+        assertEquals("v1", record.getUid());
+        assertEquals("Domaine \"Les Vignes\", Bordeaux", record.getName());
+        assertEquals("1 route des Vins\n33000 Bordeaux", record.getAddress());
+        assertEquals(1, record.getWines().size());
+        assertEquals("Cuvee, \"prestige\"", record.getWines().get(0).getName());
+        assertEquals(Integer.valueOf(2005), record.getWines().get(0).getYear());
+        assertEquals(Wine.Type.RED, record.getWines().get(0).getType());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void groupsWineRowsOfVineyard() throws IOException {
+        VineyardFormat.RecordReader reader = reader(HEADER
+            + "v1,Domaine A,1 route des Vins,w1,Cuvee 1,2001,RED\r\n"
+            + "v1,Domaine A,1 route des Vins,w2,Cuvee 2,2002,WHITE\r\n"
+            + "v2,Domaine B,2 route des Vins,,,,\r\n"
+            + ",Domaine C,3 route des Vins,,Cuvee 3,2003,ROSE\r\n"
+            + ",Domaine C,3 route des Vins,,Cuvee 4,2004,ROSE\r\n");
+
+        VineyardRecord first = reader.read();
+        assertEquals("v1", first.getUid());
+        assertEquals(2, first.getWines().size());
+        assertEquals("w2", first.getWines().get(1).getUid());
+        assertEquals(Wine.Type.WHITE, first.getWines().get(1).getType());
+
+        VineyardRecord second = reader.read();
+        assertEquals("v2", second.getUid());
+        assertTrue(second.getWines().isEmpty());
+
+        /* Without uid, consecutive rows with the same name and address are the same vineyard */
+        VineyardRecord third = reader.read();
+        assertNull(third.getUid());
+        assertEquals(2, third.getWines().size());
+        assertEquals(5, third.getPosition());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void reportsInvalidValues() throws IOException {
+        VineyardFormat.RecordReader reader = reader(HEADER
+            + "v1,Domaine A,1 route des Vins,w1,Cuvee 1,two thousand,RED\r\n"
+            + "v1,Domaine A,1 route des Vins,w2,Cuvee 2,2002,BLUE\r\n");
+
+        VineyardRecord record = reader.read();
+        assertEquals(2, record.getErrors().size());
+        assertTrue(record.getErrors().get(0).contains("line 2"));
+        assertTrue(record.getErrors().get(1).contains("line 3"));
+    }
+
+    @Test(expected=IOException.class)
+    public void rejectsUnterminatedQuotedField() throws IOException {
+        reader(HEADER + "v1,\"Domaine A,1 route des Vins,,,,\r\n").read();
+    }
+
+    @Test
+    public void writtenRecordsAreReadBack() throws IOException {
+        VineyardRecord record = new VineyardRecord(0);
+        record.setUid("v1");
+        record.setName("Domaine \"A\", Bordeaux");
+        record.setAddress("1 route des Vins\r\n33000 Bordeaux");
+        VineyardRecord.WineRecord wine = new VineyardRecord.WineRecord();
+        wine.setUid("w1");
+        wine.setName("Cuvee, 1");
+        wine.setYear(2001);
+        wine.setType(Wine.Type.RED);
+        record.getWines().add(wine);
+        VineyardRecord empty = new VineyardRecord(0);
+        empty.setUid("v2");
+        empty.setName("Domaine B");
+        empty.setAddress("2 route des Vins");
+
+        StringWriter out = new StringWriter();
+        VineyardFormat.RecordWriter writer = VineyardFormat.CSV.writer(out);
+        writer.write(record);
+        writer.write(empty);
+        writer.close();
+
+        VineyardFormat.RecordReader reader = reader(out.toString());
+        VineyardRecord read = reader.read();
+        assertEquals(record.getName(), read.getName());
+        assertEquals(record.getAddress(), read.getAddress());
+        assertEquals("Cuvee, 1", read.getWines().get(0).getName());
+        assertEquals(Integer.valueOf(2001), read.getWines().get(0).getYear());
+        VineyardRecord readEmpty = reader.read();
+        assertEquals("v2", readEmpty.getUid());
+        assertTrue(readEmpty.getWines().isEmpty());
+        assertNull(reader.read());
+    }
+
+    private static VineyardFormat.RecordReader reader(String csv) throws IOException {
+        return VineyardFormat.CSV.reader(new StringReader(csv));
+    }
+}
@@ -0,0 +1,106 @@
+package com.wineshop.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.GenericXmlApplicationContext;
+
+import com.wineshop.entities.Vineyard;
+
+/**
+ * Imports and exports vineyards: rejected records are reported with their line, and exported
+ * files are imported again as updates of the same vineyards and wines
+ */
+public class VineyardImportExportTest {
+
+    private static final String HEADER = "vineyard_uid,vineyard,address,wine_uid,wine,year,type\r\n";
+
+    private static GenericXmlApplicationContext context;
+
+    private static VineyardImportExport importExport;
+
+    private static VineyardRepository vineyardRepository;
+
+    @BeforeClass
+    public static void setUpContext() {
+        System.setProperty("test.db", "importexport");
+        context = new GenericXmlApplicationContext("classpath:test-context.xml");
+        importExport = context.getBean(VineyardImportExport.class);
+        vineyardRepository = context.getBean(VineyardRepository.class);
+    }
+
+    @AfterClass
+    public static void closeContext() {
+        context.close();
+    }
+
+    @Test
+    public void reportsRejectedRecords() throws IOException {
+        ImportResult result = importCsv(HEADER
+            + "rejected-1,Domaine Valide,1 route des Vins,,Cuvee 1,2001,RED\r\n"
+            + "rejected-2,Dom,2 route des Vins,,,,\r\n"
+            + "rejected-3,Domaine Millesime,3 route des Vins,,Cuvee 3,1850,RED\r\n"
+            + "rejected-4,Domaine Annee,4 route des Vins,,Cuvee 4,recent,RED\r\n"
+            + "rejected-0123456789012345678901234567890123456789,Domaine Uid,5 route des Vins,,,,\r\n");
+
+        assertEquals(1, result.getCreated());
+        assertEquals(4, result.getRejected());
+        assertEquals(4, result.getErrors().size());
+        assertTrue(result.getErrors().get(0), result.getErrors().get(0).startsWith("Line 3: "));
+        assertTrue(result.getErrors().get(0), result.getErrors().get(0).contains("name"));
+        assertTrue(result.getErrors().get(1), result.getErrors().get(1).startsWith("Line 4: "));
+        assertTrue(result.getErrors().get(1), result.getErrors().get(1).contains("year"));
+        assertTrue(result.getErrors().get(2), result.getErrors().get(2).startsWith("Line 5: "));
+        assertTrue(result.getErrors().get(3), result.getErrors().get(3).startsWith("Line 6: "));
+    }
+
+    @Test
+    public void exportedVineyardsAreImportedAgain() throws IOException {
+        for (VineyardFormat format : VineyardFormat.values()) {
+            importCsv(HEADER
+                + format + "-1,\"Domaine \"\"A\"\", Bordeaux\",\"1 route des Vins\n33000 Bordeaux\"," + format + "-w1,Cuvee 1,2001,RED\r\n"
+                + format + "-1,\"Domaine \"\"A\"\", Bordeaux\",\"1 route des Vins\n33000 Bordeaux\"," + format + "-w2,Cuvee 2,2002,WHITE\r\n"
+                + format + "-2,Domaine B,2 route des Vins,,,,\r\n");
+            long vineyards = vineyardRepository.count();
+
+            String exported = export(format);
+            ImportResult result = importExport.importVineyards(format.reader(new StringReader(exported)));
+            assertEquals(0, result.getCreated());
+            assertEquals(0, result.getRejected());
+            assertEquals(vineyards, result.getUpdated());
+            assertEquals(vineyards, vineyardRepository.count());
+            assertEquals(exported, export(format));
+
+            Vineyard vineyard = vineyard(format + "-1");
+            assertEquals("Domaine \"A\", Bordeaux", vineyard.getName());
+            assertEquals(2, vineyard.getWineCount());
+        }
+    }
+
+    private static ImportResult importCsv(String csv) throws IOException {
+        return importExport.importVineyards(VineyardFormat.CSV.reader(new StringReader(csv)));
+    }
+
+    private static Vineyard vineyard(String uid) {
+        for (Vineyard vineyard : vineyardRepository.findAll()) {
+            if (uid.equals(vineyard.getUid()))
+                return vineyard;
+        }
+        throw new AssertionError("Vineyard not imported: " + uid);
+    }
+
+    private static String export(VineyardFormat format) throws IOException {
+        StringWriter out = new StringWriter();
+        VineyardFormat.RecordWriter writer = format.writer(out);
+        importExport.exportVineyards(writer);
+        writer.close();
+        return out.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package com.wineshop.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import com.wineshop.entities.Wine;
+
+/**
+ * Reads and writes JSON records: escaped strings, unknown fields and parsing errors
+ */
+public class VineyardJsonTest {
+
+    @Test
+    public void readsVineyardsWithWines() throws IOException {
+        VineyardFormat.RecordReader reader = reader("[\n"
+            + "  { \"uid\": \"v1\", \"name\": \"Domaine \\\"A\\\", Bordeaux\", \"address\": \"1 route des Vins\\n33000 Bordeaux\",\n"
+            + "    \"rating\": { \"stars\": 3 },\n"
+            + "    \"wines\": [ { \"uid\": \"w1\", \"name\": \"Cuvee 1\", \"year\": 2001, \"type\": \"red\" },\n"
+            + "               { \"name\": \"Cuvee 2\", \"year\": null, \"type\": null } ] },\n"
+            + "  { \"name\": \"Domaine B\", \"address\": \"2 route des Vins\" }\n"
+            + "]");
+
+        VineyardRecord first = reader.read();
+        assertEquals("v1", first.getUid());
+        assertEquals("Domaine \"A\", Bordeaux", first.getName());
+        assertEquals("1 route des Vins\n33000 Bordeaux", first.getAddress());
+        assertEquals(2, first.getWines().size());
+        assertEquals(Wine.Type.RED, first.getWines().get(0).getType());
+        assertNull(first.getWines().get(1).getYear());
+        assertTrue(first.getErrors().isEmpty());
+
+        VineyardRecord second = reader.read();
+        assertEquals("Domaine B", second.getName());
+        assertEquals(6, second.getPosition());
+        assertTrue(second.getWines().isEmpty());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void reportsInvalidValues() throws IOException {
+        VineyardRecord record = reader("[ { \"name\": \"Domaine A\", \"address\": \"1 route des Vins\", "
+            + "\"wines\": [ { \"name\": \"Cuvee 1\", \"year\": \"2001\", \"type\": \"BLUE\" } ] } ]").read();
+
+        assertEquals(2, record.getErrors().size());
+    }
+
+    @Test(expected=IOException.class)
+    public void rejectsInputThatIsNotAnArray() throws IOException {
+        reader("{ \"name\": \"Domaine A\" }");
+    }
+
+    @Test
+    public void writtenRecordsAreReadBack() throws IOException {
+        VineyardRecord record = new VineyardRecord(0);
+        record.setUid("v1");
+        record.setName("Domaine \"A\"");
+        record.setAddress("1 route des Vins");
+        VineyardRecord.WineRecord wine = new VineyardRecord.WineRecord();
+        wine.setUid("w1");
+        wine.setName("Cuvee 1");
+        wine.setType(Wine.Type.WHITE);
+        record.getWines().add(wine);
+
+        StringWriter out = new StringWriter();
+        VineyardFormat.RecordWriter writer = VineyardFormat.JSON.writer(out);
+        writer.write(record);
+        writer.write(record);
+        writer.close();
+
+        VineyardFormat.RecordReader reader = reader(out.toString());
+        for (int i = 0; i < 2; i++) {
+            VineyardRecord read = reader.read();
+            assertEquals("Domaine \"A\"", read.getName());
+            assertEquals("w1", read.getWines().get(0).getUid());
+            assertNull(read.getWines().get(0).getYear());
+            assertEquals(Wine.Type.WHITE, read.getWines().get(0).getType());
+        }
+        assertNull(reader.read());
+    }
+
+    private static VineyardFormat.RecordReader reader(String json) throws IOException {
+        return VineyardFormat.JSON.reader(new StringReader(json));
+    }
+}
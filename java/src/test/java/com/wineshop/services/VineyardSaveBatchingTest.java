@@ -0,0 +1,93 @@
+package com.wineshop.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.GenericXmlApplicationContext;
+
+import com.wineshop.StatementCountingDataSource;
+import com.wineshop.entities.Address;
+import com.wineshop.entities.Vineyard;
+import com.wineshop.entities.Wine;
+
+/**
+ * Checks that saving a vineyard with many wines, as done by the client with the whole graph,
+ * sends the inserts and updates of the wines in JDBC batches (hibernate.jdbc.batch_size in persistence.xml)
+ */
+public class VineyardSaveBatchingTest {
+
+    private static final int WINES = 500;
+
+    /* Batches of 50 statements, one sequence call per 50 ids (pooled sequence), and the queries of the merge */
+    private static final int MAX_ROUND_TRIPS = 2 * WINES / 50 + 10;
+
+    private static GenericXmlApplicationContext context;
+
+    private static VineyardRepository vineyardRepository;
+
+    private static StatementCountingDataSource dataSource;
+
+    @BeforeClass
+    public static void setUpContext() {
+        System.setProperty("test.db", "batching");
+        context = new GenericXmlApplicationContext("classpath:test-context.xml");
+        vineyardRepository = context.getBean(VineyardRepository.class);
+        dataSource = context.getBean(StatementCountingDataSource.class);
+    }
+
+    @AfterClass
+    public static void closeContext() {
+        context.close();
+    }
+
+    @Before
+    public void resetCounters() {
+        dataSource.reset();
+    }
+
+    @Test
+    public void insertsWinesInBatches() {
+        vineyardRepository.save(vineyard("Domaine des Batches", WINES));
+
+        assertTrue("Batched statements: " + dataSource.getBatchedStatements(), dataSource.getBatchedStatements() > WINES);
+        assertTrue("Round-trips: " + dataSource.getRoundTrips(), dataSource.getRoundTrips() <= MAX_ROUND_TRIPS);
+    }
+
+    @Test
+    public void updatesWinesInBatches() {
+        /* Detached once the transaction of save is completed, like the graph sent by the client */
+        Vineyard detached = vineyardRepository.save(vineyard("Domaine des Updates", WINES));
+        for (Wine wine : detached.getWines())
+            wine.setName(wine.getName() + " (updated)");
+
+        dataSource.reset();
+        Vineyard saved = vineyardRepository.save(detached);
+
+        assertEquals(WINES, saved.getWines().size());
+        assertTrue("Batched statements: " + dataSource.getBatchedStatements(), dataSource.getBatchedStatements() >= WINES);
+        assertTrue("Round-trips: " + dataSource.getRoundTrips(), dataSource.getRoundTrips() <= MAX_ROUND_TRIPS);
+    }
+
+    private static Vineyard vineyard(String name, int wineCount) {
+        Vineyard vineyard = new Vineyard();
+        vineyard.setName(name);
+        vineyard.setAddress(new Address());
+        vineyard.getAddress().setAddress("1 route des vins");
+        vineyard.setWines(new ArrayList<Wine>());
+        for (int i = 0; i < wineCount; i++) {
+            Wine wine = new Wine();
+            wine.setVineyard(vineyard);
+            wine.setName("Cuvee " + i);
+            wine.setYear(1950 + i % 60);
+            wine.setType(Wine.Type.RED);
+            vineyard.getWines().add(wine);
+        }
+        return vineyard;
+    }
+}
@@ -0,0 +1,138 @@
+package com.wineshop.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.GenericXmlApplicationContext;
+
+import com.wineshop.entities.Address;
+import com.wineshop.entities.Vineyard;
+import com.wineshop.entities.Wine;
+
+/**
+ * Pages through a large number of vineyards under each supported sort and checks that every
+ * vineyard is returned once, in order. The latency of the pages is measured by RepositoryQueryBenchmark.
+ *
+ * Names, addresses and wine counts have many duplicates so pages end in the middle of equal values.
+ */
+public class VineyardSortPagingTest {
+
+    private static final int VINEYARDS = 2000;
+
+    private static final int PAGE_SIZE = 100;
+
+    private static GenericXmlApplicationContext context;
+
+    private static VineyardRepository vineyardRepository;
+
+    @BeforeClass
+    public static void setUpContext() {
+        System.setProperty("test.db", "sorting");
+        context = new GenericXmlApplicationContext("classpath:test-context.xml");
+        vineyardRepository = context.getBean(VineyardRepository.class);
+
+        List<Vineyard> vineyards = new ArrayList<Vineyard>(VINEYARDS);
+        for (int i = 0; i < VINEYARDS; i++)
+            vineyards.add(vineyard("Domaine " + (i % 400), (i % 37) + " route des Vins", i % 4));
+        vineyardRepository.save(vineyards);
+    }
+
+    @AfterClass
+    public static void closeContext() {
+        context.close();
+    }
+
+    @Test
+    public void pagesByName() {
+        page(new String[] { "name" }, new boolean[] { false });
+        page(new String[] { "name" }, new boolean[] { true });
+    }
+
+    @Test
+    public void pagesByAddress() {
+        page(new String[] { "address" }, new boolean[] { false });
+        page(new String[] { "address", "name" }, new boolean[] { false, false });
+    }
+
+    @Test
+    public void pagesByWineCount() {
+        page(new String[] { "wineCount" }, new boolean[] { true });
+        page(new String[] { "wineCount", "name" }, new boolean[] { true, false });
+    }
+
+    @Test
+    public void pagesByMixedDirections() {
+        page(new String[] { "address", "wineCount", "name" }, new boolean[] { false, true, false });
+    }
+
+    private static void page(String[] sort, boolean[] desc) {
+        Set<Long> ids = new HashSet<Long>();
+        Vineyard last = null;
+        while (true) {
+            List<Vineyard> page = vineyardRepository.findByNameAfter(null, sort, desc,
+                last != null ? sortValues(last, sort) : null, last != null ? last.getId() : null, PAGE_SIZE);
+
+            for (Vineyard vineyard : page) {
+                assertTrue("Vineyard returned twice: " + vineyard.getId(), ids.add(vineyard.getId()));
+                if (last != null)
+                    assertTrue("Vineyard out of order: " + vineyard.getId(), compare(last, vineyard, sort, desc) < 0);
+                last = vineyard;
+            }
+            if (page.size() < PAGE_SIZE)
+                break;
+        }
+
+        assertEquals(VINEYARDS, ids.size());
+    }
+
+    private static Object[] sortValues(Vineyard vineyard, String[] sort) {
+        Object[] values = new Object[sort.length];
+        for (int i = 0; i < sort.length; i++)
+            values[i] = sortValue(vineyard, sort[i]);
+        return values;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static int compare(Vineyard a, Vineyard b, String[] sort, boolean[] desc) {
+        for (int i = 0; i < sort.length; i++) {
+            int result = ((Comparable)sortValue(a, sort[i])).compareTo(sortValue(b, sort[i]));
+            if (result != 0)
+                return desc[i] ? -result : result;
+        }
+        int result = a.getId().compareTo(b.getId());
+        return desc[0] ? -result : result;
+    }
+
+    private static Object sortValue(Vineyard vineyard, String property) {
+        if ("name".equals(property))
+            return vineyard.getName();
+        if ("address".equals(property))
+            return vineyard.getAddress().getAddress();
+        return vineyard.getWineCount();
+    }
+
+    private static Vineyard vineyard(String name, String address, int wineCount) {
+        Vineyard vineyard = new Vineyard();
+        vineyard.setName(name);
+        vineyard.setAddress(new Address());
+        vineyard.getAddress().setAddress(address);
+        vineyard.setWines(new ArrayList<Wine>());
+        for (int i = 0; i < wineCount; i++) {
+            Wine wine = new Wine();
+            wine.setVineyard(vineyard);
+            wine.setName("Cuvee " + i);
+            wine.setYear(1990 + i);
+            wine.setType(Wine.Type.RED);
+            vineyard.getWines().add(wine);
+        }
+        return vineyard;
+    }
+}
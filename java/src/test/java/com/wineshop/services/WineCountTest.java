@@ -0,0 +1,100 @@
+package com.wineshop.services;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.GenericXmlApplicationContext;
+
+import com.wineshop.entities.Address;
+import com.wineshop.entities.Vineyard;
+import com.wineshop.entities.Wine;
+
+/**
+ * Checks the wine counts of vineyards, used to sort vineyards with an index, when wines are added,
+ * moved to another vineyard and deleted
+ */
+public class WineCountTest {
+
+    private static GenericXmlApplicationContext context;
+
+    private static VineyardRepository vineyardRepository;
+
+    private static WineRepository wineRepository;
+
+    @BeforeClass
+    public static void setUpContext() {
+        System.setProperty("test.db", "winecount");
+        context = new GenericXmlApplicationContext("classpath:test-context.xml");
+        vineyardRepository = context.getBean(VineyardRepository.class);
+        wineRepository = context.getBean(WineRepository.class);
+    }
+
+    @AfterClass
+    public static void closeContext() {
+        context.close();
+    }
+
+    @Test
+    public void countsAddedAndDeletedWines() {
+        Vineyard vineyard = vineyardRepository.save(vineyard("Domaine du Compte", 2));
+        assertEquals(2, wineCount(vineyard));
+
+        Wine wine = wineRepository.save(wine(vineyard, "Cuvee ajoutee"));
+        assertEquals(3, wineCount(vineyard));
+
+        wineRepository.delete(wine.getId());
+        assertEquals(2, wineCount(vineyard));
+    }
+
+    @Test
+    public void movesCountWithWine() {
+        Vineyard from = vineyardRepository.save(vineyard("Domaine du Depart", 2));
+        Vineyard to = vineyardRepository.save(vineyard("Domaine de l'Arrivee", 1));
+
+        /* Saved as the client does, with a detached wine referencing the other vineyard */
+        Wine wine = wineRepository.findOne(from.getWines().get(0).getId());
+        wine.setVineyard(to);
+        wine = wineRepository.save(wine);
+        assertEquals(1, wineCount(from));
+        assertEquals(2, wineCount(to));
+
+        wine.setVineyard(vineyardRepository.findOne(from.getId()));
+        wine = wineRepository.save(wine);
+        assertEquals(2, wineCount(from));
+        assertEquals(1, wineCount(to));
+
+        wine.setVineyard(to);
+        wine = wineRepository.save(wine);
+        wineRepository.delete(wine.getId());
+        assertEquals(1, wineCount(from));
+        assertEquals(1, wineCount(to));
+    }
+
+    private static int wineCount(Vineyard vineyard) {
+        return vineyardRepository.findOne(vineyard.getId()).getWineCount();
+    }
+
+    private static Vineyard vineyard(String name, int wines) {
+        Vineyard vineyard = new Vineyard();
+        vineyard.setName(name);
+        vineyard.setAddress(new Address());
+        vineyard.getAddress().setAddress("1 route des Vignes");
+        vineyard.setWines(new ArrayList<Wine>());
+        for (int i = 0; i < wines; i++)
+            vineyard.getWines().add(wine(vineyard, "Cuvee " + i));
+        return vineyard;
+    }
+
+    private static Wine wine(Vineyard vineyard, String name) {
+        Wine wine = new Wine();
+        wine.setVineyard(vineyard);
+        wine.setName(name);
+        wine.setYear(2000);
+        wine.setType(Wine.Type.RED);
+        return wine;
+    }
+}
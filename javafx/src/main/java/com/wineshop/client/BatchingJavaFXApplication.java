@@ -0,0 +1,141 @@
+/*
+  GRANITE DATA SERVICES
+  Copyright (C) 2011 GRANITE DATA SERVICES S.A.S.
+
+  This file is part of Granite Data Services.
+
+  Granite Data Services is free software; you can redistribute it and/or modify
+  it under the terms of the GNU Lesser General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or (at your
+  option) any later version.
+
+  Granite Data Services is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+  FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+  for more details.
+
+  You should have received a copy of the GNU Lesser General Public License
+  along with this library; if not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.wineshop.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.beans.property.ReadOnlyLongProperty;
+import javafx.beans.property.ReadOnlyLongWrapper;
+
+import org.granite.client.javafx.tide.JavaFXApplication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wineshop.client.metrics.ClientMetrics;
+
+
+/**
+ * JavaFX integration which applies the work scheduled by Tide on the UI thread in batches
+ * 
+ * Tide schedules the merge of each data update message (and the handling of each remote call result) 
+ * on the FX thread. Instead of one Platform.runLater per message, tasks received while a batch is pending
+ * are accumulated and run together in a single runLater, so a burst of updates is merged in one pulse 
+ * and the table and lists are rendered once.
+ * 
+ * When client metrics are set, the time of each task (mostly merges), the time the FX thread is blocked
+ * by each batch and the delay between the scheduling of a batch and its execution are recorded.
+ */
+public class BatchingJavaFXApplication extends JavaFXApplication {
+	
+	private static final Logger log = LoggerFactory.getLogger(BatchingJavaFXApplication.class);
+	
+	private final Object lock = new Object();
+	private List<Runnable> pending = new ArrayList<Runnable>();
+	private boolean scheduled = false;
+	private long scheduledTime;
+	
+	private ClientMetrics metrics;
+	
+	private final ReadOnlyIntegerWrapper lastBatchSize = new ReadOnlyIntegerWrapper(this, "lastBatchSize");
+	private final ReadOnlyLongWrapper lastMergeTime = new ReadOnlyLongWrapper(this, "lastMergeTime");
+	private final ReadOnlyLongWrapper maxMergeTime = new ReadOnlyLongWrapper(this, "maxMergeTime");
+	
+	private final Runnable drain = new Runnable() {
+		@Override
+		public void run() {
+			List<Runnable> batch;
+			long queuedSince;
+			synchronized (lock) {
+				batch = pending;
+				pending = new ArrayList<Runnable>();
+				scheduled = false;
+				queuedSince = scheduledTime;
+			}
+			
+			long start = System.nanoTime();
+			for (Runnable runnable : batch) {
+				long taskStart = metrics != null ? System.nanoTime() : 0L;
+				try {
+					runnable.run();
+				}
+				catch (RuntimeException e) {
+					log.error("Error in UI task", e);
+				}
+				if (metrics != null)
+					metrics.latency("fx.task").record(ClientMetrics.micros(taskStart));
+			}
+			if (metrics != null) {
+				metrics.latency("fx.batch").record(ClientMetrics.micros(start));
+				metrics.latency("fx.queue").record((start - queuedSince) / 1000L);
+				metrics.size("fx.batch.tasks").record(batch.size());
+			}
+			long mergeTime = (System.nanoTime() - start) / 1000000L;
+			
+			lastBatchSize.set(batch.size());
+			lastMergeTime.set(mergeTime);
+			if (mergeTime > maxMergeTime.get())
+				maxMergeTime.set(mergeTime);
+			log.debug("Applied {} UI tasks in {} ms", batch.size(), mergeTime);
+		}
+	};
+	
+	@Override
+	public void execute(Runnable runnable) {
+		synchronized (lock) {
+			pending.add(runnable);
+			if (scheduled)
+				return;
+			scheduled = true;
+			scheduledTime = System.nanoTime();
+		}
+		Platform.runLater(drain);
+	}
+	
+	public void setMetrics(ClientMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Number of tasks applied in the last batch
+	 */
+	public ReadOnlyIntegerProperty lastBatchSizeProperty() {
+		return lastBatchSize.getReadOnlyProperty();
+	}
+	
+	/**
+	 * Time (ms) taken to apply the last batch
+	 */
+	public ReadOnlyLongProperty lastMergeTimeProperty() {
+		return lastMergeTime.getReadOnlyProperty();
+	}
+	
+	/**
+	 * Longest time (ms) taken to apply a batch
+	 */
+	public ReadOnlyLongProperty maxMergeTimeProperty() {
+		return maxMergeTime.getReadOnlyProperty();
+	}
+}
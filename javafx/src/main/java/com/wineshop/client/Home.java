@@ -21,13 +21,22 @@
 package com.wineshop.client;
 
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
 
+import javafx.animation.PauseTransition;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
 import javafx.beans.binding.Bindings;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
@@ -39,36 +48,43 @@ import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableColumn.CellDataFeatures;
+import javafx.scene.control.TableColumn.CellEditEvent;
+import javafx.scene.control.TableColumn.SortType;
+import javafx.scene.control.TableRow;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TextInputControl;
 import javafx.scene.control.Tooltip;
-import javafx.scene.layout.HBox;
+import javafx.scene.control.cell.ChoiceBoxTableCell;
+import javafx.scene.control.cell.TextFieldTableCell;
 import javafx.util.Callback;
-import javafx.util.converter.IntegerStringConverter;
+import javafx.util.Duration;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 
 import org.granite.client.javafx.tide.ManagedEntity;
-import org.granite.client.javafx.tide.collections.PagedQuery;
-import org.granite.client.javafx.tide.collections.TableViewSortAdapter;
 import org.granite.client.javafx.tide.spring.Identity;
 import org.granite.client.javafx.validation.FormValidator;
 import org.granite.client.javafx.validation.ValidationResultEvent;
 import org.granite.client.tide.server.SimpleTideResponder;
-import org.granite.client.tide.server.TideFaultEvent;
 import org.granite.client.tide.server.TideResultEvent;
 import org.granite.client.tide.spring.TideApplicationEvent;
 import org.granite.client.validation.NotifyingValidatorFactory;
 import org.springframework.context.ApplicationListener;
 import org.springframework.stereotype.Component;
 
+import com.wineshop.client.collections.KeysetQuery;
 import com.wineshop.client.entities.Address;
 import com.wineshop.client.entities.Vineyard;
 import com.wineshop.client.entities.Wine;
 import com.wineshop.client.entities.Wine$Type;
+import com.wineshop.client.entities.WineFilter;
+import com.wineshop.client.metrics.ClientMetrics;
 import com.wineshop.client.services.VineyardRepository;
+import com.wineshop.client.services.WineRepository;
 
 
 /**
@@ -80,10 +96,22 @@ public class Home implements Initializable, ApplicationListener<TideApplicationE
 
 	@FXML
 	private TextField fieldSearch;
+	
+	@FXML
+	private Label labelQueryTime;
 
 	@FXML
 	private TableView<Vineyard> tableVineyards;
 	
+	@FXML
+	private TableColumn<Vineyard, String> columnName;
+	
+	@FXML
+	private TableColumn<Vineyard, String> columnAddress;
+	
+	@FXML
+	private TableColumn<Vineyard, Integer> columnWineCount;
+	
 	@FXML
 	private Parent formVineyard;
 	
@@ -99,6 +127,30 @@ public class Home implements Initializable, ApplicationListener<TideApplicationE
 	@FXML
 	private ListView<Wine> listWines;
 	
+	@FXML
+	private Parent boxWines;
+	
+	@FXML
+	private TextField fieldMinYear;
+	
+	@FXML
+	private TextField fieldMaxYear;
+	
+	@FXML
+	private ChoiceBox<Wine$Type> choiceWineType;
+	
+	@FXML
+	private TableView<Wine> tableWines;
+	
+	@FXML
+	private TableColumn<Wine, String> columnWineName;
+	
+	@FXML
+	private TableColumn<Wine, Integer> columnWineYear;
+	
+	@FXML
+	private TableColumn<Wine, Wine$Type> columnWineType;
+	
 	@FXML
 	private Button buttonSave;
 	
@@ -110,7 +162,10 @@ public class Home implements Initializable, ApplicationListener<TideApplicationE
 
 	
 	@Inject
-	private PagedQuery<Vineyard, Vineyard> vineyards;
+	private KeysetQuery<Vineyard, Vineyard> vineyards;
+	
+	@Inject
+	private KeysetQuery<Wine, WineFilter> wines;
 	
 	@Inject
 	private ManagedEntity<Vineyard> vineyard;
@@ -120,12 +175,30 @@ public class Home implements Initializable, ApplicationListener<TideApplicationE
 	
 	@Inject
 	private VineyardRepository vineyardRepository;
+	
+	@Inject
+	private WineRepository wineRepository;
     
     @Inject
     private NotifyingValidatorFactory validatorFactory;
+    
+    @Inject
+    private ClientMetrics metrics;
 	
 	private FormValidator formValidator;
 	
+	private final Map<TableColumn<Vineyard, ?>, String> sortProperties = new HashMap<TableColumn<Vineyard, ?>, String>();
+	
+	private final Map<TableColumn<Wine, ?>, String> wineSortProperties = new HashMap<TableColumn<Wine, ?>, String>();
+	
+	// Coalesces keystrokes in the search field into a single query
+	private final PauseTransition searchDelay = new PauseTransition(Duration.millis(300));
+	
+	private String searchedText = null;
+	
+	// Coalesces keystrokes in the year filters of the wines into a single query
+	private final PauseTransition wineFilterDelay = new PauseTransition(Duration.millis(300));
+	
 	
 	@PostConstruct
 	private void init() {
@@ -141,10 +214,49 @@ public class Home implements Initializable, ApplicationListener<TideApplicationE
 	@Override
 	public void initialize(URL url, ResourceBundle bundle) {
 		// Setup of the table view
-		vineyards.setSortAdapter(new TableViewSortAdapter<Vineyard>(tableVineyards, Vineyard.class));
+		tableVineyards.setItems(vineyards.getItems());
 	    vineyards.getFilter().nameProperty()
         	.bindBidirectional(fieldSearch.textProperty());
 	    
+	    // Incremental search once typing pauses
+	    searchDelay.setOnFinished(new EventHandler<ActionEvent>() {
+	    	@Override
+	    	public void handle(ActionEvent event) {
+	    		if (fieldSearch.getText() == null ? searchedText != null : !fieldSearch.getText().equals(searchedText))
+	    			search(event);
+	    	}
+	    });
+	    fieldSearch.textProperty().addListener(new InvalidationListener() {
+	    	@Override
+	    	public void invalidated(Observable observable) {
+	    		searchDelay.playFromStart();
+	    	}
+	    });
+	    labelQueryTime.textProperty().bind(Bindings.format("%d ms", vineyards.queryTimeProperty()));
+	    
+	    columnAddress.setCellValueFactory(new Callback<CellDataFeatures<Vineyard, String>, ObservableValue<String>>() {
+	    	@Override
+	    	public ObservableValue<String> call(CellDataFeatures<Vineyard, String> cell) {
+	    		return cell.getValue().getAddress().addressProperty();
+	    	}
+	    });
+	    
+	    // Server-side sorting: the columns of the sort order define the keyset
+	    sortProperties.put(columnName, "name");
+	    sortProperties.put(columnAddress, "address");
+	    sortProperties.put(columnWineCount, "wineCount");
+	    bindSort(tableVineyards, sortProperties, vineyards);
+	    
+	    // Load the next pages ahead of the displayed rows
+	    bindReadAhead(tableVineyards, vineyards);
+	    search(null);
+	    
+	    // Setup of the paged table of wines of a saved vineyard, each edited cell is saved immediately
+	    setupWines();
+	    
+	    // The cached vineyards displayed at startup cannot be edited until the first page is loaded from the server 
+	    formVineyard.disableProperty().bind(vineyards.preloadedProperty());
+	    
 	    // Setup of the creation/edit form
 		labelFormVineyard.textProperty().bind(Bindings.when(vineyard.savedProperty()).then("Edit vineyard").otherwise("Create vineyard"));
 		
@@ -159,7 +271,17 @@ public class Home implements Initializable, ApplicationListener<TideApplicationE
 				if (newValue != null) {
 					fieldName.textProperty().bindBidirectional(newValue.nameProperty());
 					fieldAddress.textProperty().bindBidirectional(newValue.getAddress().addressProperty());
-					listWines.setItems(newValue.getWines());
+				}
+				// The wines of a saved vineyard are loaded by pages, its collection of wines is never initialized 
+				if (newValue != null && newValue.getId() != null) {
+					wines.getFilter().setVineyardId(newValue.getId());
+					wines.applyFilter();
+				}
+				else {
+					wines.getFilter().setVineyardId(null);
+					wines.clear();
+					if (newValue != null)
+						listWines.setItems(newValue.getWines());
 				}
 			}
 		});
@@ -170,6 +292,10 @@ public class Home implements Initializable, ApplicationListener<TideApplicationE
 		        return new WineListCell();
 		    }
 		});
+		listWines.visibleProperty().bind(Bindings.not(vineyard.savedProperty()));
+		listWines.managedProperty().bind(listWines.visibleProperty());
+		boxWines.visibleProperty().bind(vineyard.savedProperty());
+		boxWines.managedProperty().bind(boxWines.visibleProperty());
 		
 		buttonDelete.visibleProperty().bind(vineyard.savedProperty());
 		buttonDelete.disableProperty().bind(
@@ -218,7 +344,150 @@ public class Home implements Initializable, ApplicationListener<TideApplicationE
 	 */
 	@FXML
 	private void search(ActionEvent event) {
-	    vineyards.refresh();
+		searchDelay.stop();
+		searchedText = fieldSearch.getText();
+	    vineyards.applyFilter();
+	}
+	
+	/**
+	 * Setup of the table of wines and of its filters
+	 */
+	private void setupWines() {
+		tableWines.setItems(wines.getItems());
+		
+		columnWineName.setCellFactory(TextFieldTableCell.<Wine>forTableColumn());
+		columnWineName.setOnEditCommit(new EventHandler<CellEditEvent<Wine, String>>() {
+			@Override
+			public void handle(CellEditEvent<Wine, String> event) {
+				event.getRowValue().setName(event.getNewValue());
+				saveWine(event.getRowValue());
+			}
+		});
+		columnWineYear.setCellFactory(TextFieldTableCell.<Wine, Integer>forTableColumn(WineListCell.YEAR_CONVERTER));
+		columnWineYear.setOnEditCommit(new EventHandler<CellEditEvent<Wine, Integer>>() {
+			@Override
+			public void handle(CellEditEvent<Wine, Integer> event) {
+				event.getRowValue().setYear(event.getNewValue());
+				saveWine(event.getRowValue());
+			}
+		});
+		columnWineType.setCellFactory(ChoiceBoxTableCell.<Wine, Wine$Type>forTableColumn(WineListCell.TYPES));
+		columnWineType.setOnEditCommit(new EventHandler<CellEditEvent<Wine, Wine$Type>>() {
+			@Override
+			public void handle(CellEditEvent<Wine, Wine$Type> event) {
+				event.getRowValue().setType(event.getNewValue());
+				saveWine(event.getRowValue());
+			}
+		});
+		
+		wineSortProperties.put(columnWineName, "name");
+		wineSortProperties.put(columnWineYear, "year");
+		wineSortProperties.put(columnWineType, "type");
+		bindSort(tableWines, wineSortProperties, wines);
+		bindReadAhead(tableWines, wines);
+		
+		// Filters, the empty type matches all types
+		fieldMinYear.textProperty().bindBidirectional(wines.getFilter().minYearProperty(), WineListCell.YEAR_CONVERTER);
+		fieldMaxYear.textProperty().bindBidirectional(wines.getFilter().maxYearProperty(), WineListCell.YEAR_CONVERTER);
+		ObservableList<Wine$Type> types = FXCollections.observableArrayList((Wine$Type)null);
+		types.addAll(Arrays.asList(Wine$Type.values()));
+		choiceWineType.setItems(types);
+		choiceWineType.getSelectionModel().selectedItemProperty().addListener(new ChangeListener<Wine$Type>() {
+			@Override
+			public void changed(ObservableValue<? extends Wine$Type> property, Wine$Type oldValue, Wine$Type newValue) {
+				wines.getFilter().setType(newValue);
+			}
+		});
+		wineFilterDelay.setOnFinished(new EventHandler<ActionEvent>() {
+			@Override
+			public void handle(ActionEvent event) {
+				if (wines.getFilter().getVineyardId() != null)
+					wines.applyFilter();
+			}
+		});
+		InvalidationListener yearFilterListener = new InvalidationListener() {
+			@Override
+			public void invalidated(Observable observable) {
+				wineFilterDelay.playFromStart();
+			}
+		};
+		wines.getFilter().minYearProperty().addListener(yearFilterListener);
+		wines.getFilter().maxYearProperty().addListener(yearFilterListener);
+		wines.getFilter().typeProperty().addListener(new InvalidationListener() {
+			@Override
+			public void invalidated(Observable observable) {
+				wineFilterDelay.stop();
+				if (wines.getFilter().getVineyardId() != null)
+					wines.applyFilter();
+			}
+		});
+	}
+	
+	/**
+	 * Applies the sort order of a table to its query each time it changes
+	 */
+	private static <E> void bindSort(final TableView<E> table, final Map<TableColumn<E, ?>, String> sortProperties, final KeysetQuery<E, ?> query) {
+	    ChangeListener<SortType> sortTypeListener = new ChangeListener<SortType>() {
+			@Override
+			public void changed(ObservableValue<? extends SortType> property, SortType oldValue, SortType newValue) {
+				sort(table, sortProperties, query);
+			}
+	    };
+	    for (TableColumn<E, ?> column : sortProperties.keySet())
+	    	column.sortTypeProperty().addListener(sortTypeListener);
+	    table.getSortOrder().addListener(new ListChangeListener<TableColumn<E, ?>>() {
+			@Override
+			public void onChanged(ListChangeListener.Change<? extends TableColumn<E, ?>> change) {
+				sort(table, sortProperties, query);
+			}
+	    });
+	}
+	
+	/**
+	 * Applies the sort order of a table to its query
+	 */
+	private static <E> void sort(TableView<E> table, Map<TableColumn<E, ?>, String> sortProperties, KeysetQuery<E, ?> query) {
+		if (table.getSortOrder().isEmpty()) {
+			query.setSort(null, null);
+			return;
+		}
+		List<TableColumn<E, ?>> columns = table.getSortOrder();
+		String[] sort = new String[columns.size()];
+		boolean[] desc = new boolean[columns.size()];
+		for (int i = 0; i < columns.size(); i++) {
+			sort[i] = sortProperties.get(columns.get(i));
+			desc[i] = columns.get(i).getSortType() == SortType.DESCENDING;
+		}
+		query.setSort(sort, desc);
+	}
+	
+	/**
+	 * Notifies the query of the displayed rows so it reads the next pages ahead
+	 */
+	private static <E> void bindReadAhead(TableView<E> table, final KeysetQuery<E, ?> query) {
+	    table.setRowFactory(new Callback<TableView<E>, TableRow<E>>() {
+	    	public TableRow<E> call(TableView<E> tableView) {
+	    		return new TableRow<E>() {
+	    			@Override
+	    			public void updateIndex(int index) {
+	    				super.updateIndex(index);
+	    				if (index >= 0 && index < query.getItems().size())
+	    					query.scrolledTo(index);
+	    			}
+	    		};
+	    	}
+	    });
+	}
+	
+	/**
+	 * Saves a wine edited in the table of wines
+	 */
+	private void saveWine(final Wine wine) {
+		if (!validatorFactory.getValidator().validate(wine).isEmpty()) {
+			wines.refresh();
+			return;
+		}
+		wineRepository.save(wine, metrics.<Wine>timed("WineRepository.save", null));
 	}
 		
 	/**
@@ -257,21 +526,18 @@ public class Home implements Initializable, ApplicationListener<TideApplicationE
 		
 		final boolean isNew = !vineyard.isSaved();
 		vineyardRepository.save(vineyard.getInstance(), 
-			new SimpleTideResponder<Vineyard>() {
+			metrics.timed("VineyardRepository.save", new SimpleTideResponder<Vineyard>() {
 				@Override
 				public void result(TideResultEvent<Vineyard> tre) {
 					// Once the save is done, restore creation state
-					if (isNew)
+					if (isNew) {
 						select(null);
+						vineyards.refresh();
+					}
 					else
 						tableVineyards.getSelectionModel().clearSelection();
 				}
-				
-				@Override
-				public void fault(TideFaultEvent tfe) {
-					System.out.println("Error: " + tfe.getFault().getFaultDescription());
-				}
-			}
+			})
 		);
 	}
 
@@ -280,13 +546,15 @@ public class Home implements Initializable, ApplicationListener<TideApplicationE
 	 */
 	@FXML
 	private void delete(ActionEvent event) {
-		vineyardRepository.delete(vineyard.getInstance().getId(), 
-			new SimpleTideResponder<Void>() {
+		final Vineyard deleted = vineyard.getInstance();
+		vineyardRepository.delete(deleted.getId(), 
+			metrics.timed("VineyardRepository.delete", new SimpleTideResponder<Void>() {
 				@Override
 				public void result(TideResultEvent<Void> tre) {
 					tableVineyards.getSelectionModel().clearSelection();
+					vineyards.getItems().remove(deleted);
 				}
-			}
+			})
 		);
 	}
 	
@@ -311,7 +579,35 @@ public class Home implements Initializable, ApplicationListener<TideApplicationE
 	    wine.setName("");
 	    wine.setYear(Calendar.getInstance().get(Calendar.YEAR)-3);
 	    wine.setType(Wine$Type.RED);
-	    this.vineyard.getInstance().getWines().add(wine);
+	    if (!this.vineyard.isSaved()) {
+	    	this.vineyard.getInstance().getWines().add(wine);
+	    	return;
+	    }
+	    
+	    wine.setName("New wine");
+	    wineRepository.save(wine, 
+	    	metrics.timed("WineRepository.save", new SimpleTideResponder<Wine>() {
+	    		@Override
+	    		public void result(TideResultEvent<Wine> tre) {
+	    			// Reloaded to display the wine at its place in the sort order, selected if it is in the first page
+	    			final Wine saved = tre.getResult();
+	    			wines.getItems().addListener(new ListChangeListener<Wine>() {
+	    				@Override
+	    				public void onChanged(Change<? extends Wine> change) {
+	    					if (wines.getItems().isEmpty() && !wines.isComplete())
+	    						return;
+	    					wines.getItems().removeListener(this);
+	    					int index = wines.getItems().indexOf(saved);
+	    					if (index >= 0) {
+	    						tableWines.getSelectionModel().select(index);
+	    						tableWines.scrollTo(index);
+	    					}
+	    				}
+	    			});
+	    			wines.refresh();
+	    		}
+	    	})
+	    );
 	}
 
 	/**
@@ -319,82 +615,22 @@ public class Home implements Initializable, ApplicationListener<TideApplicationE
 	 */
 	@FXML
 	private void removeWine(ActionEvent event) {
+		if (this.vineyard.isSaved()) {
+			final Wine wine = tableWines.getSelectionModel().getSelectedItem();
+			if (wine == null)
+				return;
+			wineRepository.delete(wine.getId(), 
+				metrics.timed("WineRepository.delete", new SimpleTideResponder<Void>() {
+					@Override
+					public void result(TideResultEvent<Void> tre) {
+						wines.getItems().remove(wine);
+					}
+				})
+			);
+			return;
+		}
+		
 	    if (!listWines.getSelectionModel().isEmpty())
 	        this.vineyard.getInstance().getWines().remove(listWines.getSelectionModel().getSelectedIndex());
 	}
-	
-	
-	
-	private static class WineListCell extends ListCell<Wine> {
-		 
-	    private ChoiceTypeListener choiceTypeListener = null;
-	 
-	    protected void updateItem(Wine wine, boolean empty) {
-	        Wine oldWine = getItem();
-	        if (oldWine != null && wine == null) {
-	            HBox hbox = (HBox)getGraphic();
-	            
-	            TextField fieldName = (TextField)hbox.getChildren().get(0);
-	            fieldName.textProperty()
-	                .unbindBidirectional(getItem().nameProperty());
-	            
-	            TextField fieldYear = (TextField)hbox.getChildren().get(1);
-	            fieldYear.textProperty()
-	                .unbindBidirectional(getItem().yearProperty());
-	            
-	            getItem().typeProperty().unbind();
-	            getItem().typeProperty().removeListener(choiceTypeListener);
-	            choiceTypeListener = null;
-	            
-	            setGraphic(null);
-	        }
-	        
-	        super.updateItem(wine, empty);
-	        
-	        if (wine != null && wine != oldWine) {
-	            TextField fieldName = new TextField();
-	            fieldName.textProperty()
-	                .bindBidirectional(wine.nameProperty());
-	 
-	            TextField fieldYear = new TextField();
-	            fieldYear.setPrefWidth(40);
-	            fieldYear.textProperty()
-	                .bindBidirectional(wine.yearProperty(), new IntegerStringConverter());
-	 
-	            ChoiceBox<Wine$Type> choiceType = new ChoiceBox<Wine$Type>(
-	                FXCollections.observableArrayList(Wine$Type.values())
-	            );
-	            choiceType.getSelectionModel()
-	                .select(getItem().getType());
-	            getItem().typeProperty()
-	                .bind(choiceType.getSelectionModel().selectedItemProperty());
-	            choiceTypeListener = new ChoiceTypeListener(choiceType);
-	            getItem().typeProperty()
-	                .addListener(choiceTypeListener);
-	 
-	            HBox hbox = new HBox();
-	            hbox.setSpacing(5.0);
-	            hbox.getChildren().add(fieldName);
-	            hbox.getChildren().add(fieldYear);
-	            hbox.getChildren().add(choiceType);
-	            setGraphic(hbox);
-	        }
-	    }
-	 
-	    private final static class ChoiceTypeListener 
-	    	implements ChangeListener<Wine$Type> {
-	 
-	        private ChoiceBox<Wine$Type> choiceBox;
-	 
-	        public ChoiceTypeListener(ChoiceBox<Wine$Type> choiceBox) {
-	            this.choiceBox = choiceBox;
-	        }
-	 
-	        @Override
-	        public void changed(ObservableValue<? extends Wine$Type> property,
-	                Wine$Type oldValue, Wine$Type newValue) {
-	            choiceBox.getSelectionModel().select(newValue);
-	        }
-	    }
-	}
 }
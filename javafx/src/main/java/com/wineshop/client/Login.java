@@ -42,6 +42,9 @@ import org.granite.client.tide.server.TideFaultEvent;
 import org.granite.client.tide.server.TideResultEvent;
 import org.springframework.stereotype.Component;
 
+import com.wineshop.client.cache.VineyardCache;
+import com.wineshop.client.metrics.ClientMetrics;
+
 /**
  * 
  * @author william
@@ -64,11 +67,17 @@ public class Login implements Initializable, TideEventObserver {
 	@Inject
 	private DataObserver wineshopTopic;
 	
+	@Inject
+	private ClientMetrics metrics;
+	
+	@Inject
+	private VineyardCache vineyardCache;
+	
 	
 	@FXML
 	private void login(ActionEvent event) {
 		identity.login(fieldUsername.getText(), fieldPassword.getText(),
-			new SimpleTideResponder<String>() {
+			metrics.timed("Identity.login", new SimpleTideResponder<String>() {
 				@Override
 				public void result(TideResultEvent<String> tre) {
 					labelMessage.setVisible(false);
@@ -81,7 +90,7 @@ public class Login implements Initializable, TideEventObserver {
 					labelMessage.setManaged(true);
 					labelMessage.setText(tfe.getFault().getFaultDescription());
 				}
-			}
+			})
 		);
 	}
 
@@ -96,6 +105,8 @@ public class Login implements Initializable, TideEventObserver {
 		}
 		else if (ServerSession.LOGOUT.equals(event.getType())) {
 		    wineshopTopic.unsubscribe();
+		    // The vineyards of the user are not kept after logout
+		    vineyardCache.clear();
 		}
 		else if (ServerSession.SESSION_EXPIRED.equals(event.getType())) {
 			labelMessage.setVisible(true);
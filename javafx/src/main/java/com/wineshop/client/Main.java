@@ -33,11 +33,9 @@ import javafx.stage.Stage;
 
 import javax.inject.Inject;
 
-import org.granite.client.javafx.tide.JavaFXApplication;
 import org.granite.client.javafx.tide.JavaFXServerSessionStatus;
 import org.granite.client.javafx.tide.ManagedEntity;
 import org.granite.client.javafx.tide.TideFXMLLoader;
-import org.granite.client.javafx.tide.collections.PagedQuery;
 import org.granite.client.javafx.tide.spring.Identity;
 import org.granite.client.tide.ContextManager;
 import org.granite.client.tide.data.Conflicts;
@@ -58,8 +56,17 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
 
+import com.wineshop.client.cache.VineyardCache;
+import com.wineshop.client.collections.KeysetQuery;
 import com.wineshop.client.entities.Vineyard;
+import com.wineshop.client.entities.Wine;
+import com.wineshop.client.entities.WineFilter;
+import com.wineshop.client.metrics.ClientMetrics;
+import com.wineshop.client.services.VineyardPageLoader;
+import com.wineshop.client.services.VineyardVersionWatcher;
 import com.wineshop.client.services.VineyardRepository;
+import com.wineshop.client.services.WinePageLoader;
+import com.wineshop.client.services.WineRepository;
 
 
 /**
@@ -87,11 +94,26 @@ public class Main extends Application {
     public static class Config {
     	
     	/**
-    	 * Integration with the Spring context and JavaFX 
+    	 * Latency and size histograms of remote calls and UI tasks, exposed in JMX and logged periodically
+    	 */
+    	@Bean(initMethod="start", destroyMethod="stop")
+    	public ClientMetrics clientMetrics() {
+    		return new ClientMetrics(ClientMetrics.defaultLogInterval());
+    	}
+    	
+    	/**
+    	 * Integration with the Spring context and JavaFX, data updates are merged in batches on the UI thread
     	 */
     	@Bean
-    	public SpringContextManager contextManager() {
-    		return new SpringContextManager(new JavaFXApplication());
+    	public BatchingJavaFXApplication fxApplication(ClientMetrics clientMetrics) {
+    		BatchingJavaFXApplication fxApplication = new BatchingJavaFXApplication();
+    		fxApplication.setMetrics(clientMetrics);
+    		return fxApplication;
+    	}
+    	
+    	@Bean
+    	public SpringContextManager contextManager(BatchingJavaFXApplication fxApplication) {
+    		return new SpringContextManager(fxApplication);
     	}
     	
     	/**
@@ -101,6 +123,9 @@ public class Main extends Application {
     	public ServerSession serverSession() throws Exception {
     		ServerSession serverSession = new ServerSession("/shop-admin-javafx", "localhost", 8080);
         	serverSession.addRemoteAliasPackage("com.wineshop.client.entities");
+        	serverSession.addRemoteAliasPackage("com.wineshop.client.data");
+        	// Messaging over WebSocket when the server provides it, long-polling otherwise
+        	serverSession.setUseWebSocket(MessagingTransport.useWebSocket("/shop-admin-javafx", "localhost", 8080));
         	return serverSession;
     	}
     	
@@ -128,22 +153,39 @@ public class Main extends Application {
     		return new App();
     	}
     	
+    	/**
+    	 * Local copy of the vineyards displayed at startup for each server and user, saved when the application stops
+    	 */
+    	@Bean(destroyMethod="save")
+    	public VineyardCache vineyardCache() {
+    		return new VineyardCache(VineyardCache.defaultDirectory(), "localhost:8080/shop-admin-javafx", 200);
+    	}
+    	
     	/**
     	 * Defines the server query for the list of vineyards
     	 */
     	@Bean @Scope("view")
-    	public PagedQuery<Vineyard, Vineyard> vineyards(ServerSession serverSession)
-    	    throws Exception {
-    	    PagedQuery<Vineyard, Vineyard> vineyards =
-    	        new PagedQuery<Vineyard, Vineyard>(serverSession);
-    	    vineyards.setMethodName("findByFilter");
+    	public KeysetQuery<Vineyard, Vineyard> vineyards(VineyardRepository vineyardRepository, EntityManager entityManager, Identity identity, VineyardCache vineyardCache, ClientMetrics clientMetrics) {
+    	    KeysetQuery<Vineyard, Vineyard> vineyards =
+    	        new KeysetQuery<Vineyard, Vineyard>(new Vineyard(), new VineyardPageLoader(vineyardRepository));
     	    vineyards.setMaxResults(25);
-    	    vineyards.setRemoteComponentClass(VineyardRepository.class);
-    	    vineyards.setElementClass(Vineyard.class);
-    	    vineyards.setFilterClass(Vineyard.class);
+    	    vineyards.setMetrics(clientMetrics, "VineyardRepository.findByNameAfter");
+    	    new VineyardVersionWatcher(vineyardRepository).watch(vineyards.getItems());
+    	    vineyardCache.attach(identity.getUsername(), entityManager, vineyards);
     	    return vineyards;
     	}
     	
+    	/**
+    	 * Defines the server query for the wines of the vineyard displayed in the form
+    	 */
+    	@Bean @Scope("view")
+    	public KeysetQuery<Wine, WineFilter> wines(WineRepository wineRepository, ClientMetrics clientMetrics) {
+    	    KeysetQuery<Wine, WineFilter> wines = new KeysetQuery<Wine, WineFilter>(new WineFilter(), new WinePageLoader(wineRepository));
+    	    wines.setMaxResults(50);
+    	    wines.setMetrics(clientMetrics, "WineRepository.findByFilterAfter");
+    	    return wines;
+    	}
+    	
         /**
          * A managed entity that can be used in controllers or views
          */
@@ -36,12 +36,12 @@ import javax.enterprise.inject.Disposes;
 import javax.enterprise.inject.Produces;
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Singleton;
 
 import org.granite.client.javafx.tide.JavaFXServerSessionStatus;
 import org.granite.client.javafx.tide.ManagedEntity;
 import org.granite.client.javafx.tide.TideFXMLLoader;
 import org.granite.client.javafx.tide.cdi.JavaFXTideClientExtension;
-import org.granite.client.javafx.tide.collections.PagedQuery;
 import org.granite.client.javafx.tide.spring.Identity;
 import org.granite.client.tide.ContextManager;
 import org.granite.client.tide.cdi.ViewScoped;
@@ -60,8 +60,17 @@ import org.jboss.weld.environment.se.WeldContainer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.wineshop.client.cache.VineyardCache;
+import com.wineshop.client.collections.KeysetQuery;
 import com.wineshop.client.entities.Vineyard;
+import com.wineshop.client.entities.Wine;
+import com.wineshop.client.entities.WineFilter;
+import com.wineshop.client.metrics.ClientMetrics;
+import com.wineshop.client.services.VineyardPageLoader;
+import com.wineshop.client.services.VineyardVersionWatcher;
 import com.wineshop.client.services.VineyardRepository;
+import com.wineshop.client.services.WinePageLoader;
+import com.wineshop.client.services.WineRepository;
 
 
 /**
@@ -89,6 +98,9 @@ public class MainCDI extends Application {
     		ServerSession serverSession = new ServerSession("/shop-admin-javafx", "localhost", 8080);
     		// Important: indicates the packages to scan for remotely serializable classes (mostly domain classes)
         	serverSession.addRemoteAliasPackage("com.wineshop.client.entities");
+        	serverSession.addRemoteAliasPackage("com.wineshop.client.data");
+        	// Messaging over WebSocket when the server provides it, long-polling otherwise
+        	serverSession.setUseWebSocket(MessagingTransport.useWebSocket("/shop-admin-javafx", "localhost", 8080));
         	return serverSession;
     	}
     	
@@ -109,25 +121,60 @@ public class MainCDI extends Application {
     	}
     	
     	/**
-    	 * A paged collection bound to a Spring Data repository
+    	 * Latency and size histograms of remote calls, exposed in JMX and logged periodically
+    	 */
+    	@Produces @Singleton
+    	public ClientMetrics getClientMetrics() {
+    		ClientMetrics clientMetrics = new ClientMetrics(ClientMetrics.defaultLogInterval());
+    		clientMetrics.start();
+    		return clientMetrics;
+    	}
+    	
+    	public void destroyClientMetrics(@Disposes ClientMetrics clientMetrics) {
+    		clientMetrics.stop();
+    	}
+    	
+    	/**
+    	 * Local copy of the vineyards displayed at startup
+    	 */
+    	@Produces @Singleton
+    	public VineyardCache getVineyardCache() {
+    		return new VineyardCache(VineyardCache.defaultDirectory(), "localhost:8080/shop-admin-javafx", 200);
+    	}
+    	
+    	/**
+    	 * A keyset paged collection bound to a Spring Data repository
     	 */
     	@Produces @ViewScoped @Named
-    	public PagedQuery<Vineyard, Vineyard> getVineyards(ServerSession serverSession) throws Exception {
-    		PagedQuery<Vineyard, Vineyard> vineyards = new PagedQuery<Vineyard, Vineyard>(serverSession);
-    		vineyards.setMethodName("findByFilter");
+    	public KeysetQuery<Vineyard, Vineyard> getVineyards(VineyardRepository vineyardRepository, EntityManager entityManager, Identity identity, VineyardCache vineyardCache, ClientMetrics clientMetrics) {
+    		KeysetQuery<Vineyard, Vineyard> vineyards = new KeysetQuery<Vineyard, Vineyard>(new Vineyard(), new VineyardPageLoader(vineyardRepository));
     		vineyards.setMaxResults(25);
-    		vineyards.setRemoteComponentClass(VineyardRepository.class);
-    		vineyards.setElementClass(Vineyard.class);
-    		vineyards.setFilterClass(Vineyard.class);
+    		vineyards.setMetrics(clientMetrics, "VineyardRepository.findByNameAfter");
+    		new VineyardVersionWatcher(vineyardRepository).watch(vineyards.getItems());
+    		vineyardCache.attach(identity.getUsername(), entityManager, vineyards);
     		return vineyards;
     	}
     	
     	/**
-    	 * Disposer method for all paged query components
+    	 * A keyset paged collection of the wines of the vineyard displayed in the form
+    	 */
+    	@Produces @ViewScoped @Named
+    	public KeysetQuery<Wine, WineFilter> getWines(WineRepository wineRepository, ClientMetrics clientMetrics) {
+    		KeysetQuery<Wine, WineFilter> wines = new KeysetQuery<Wine, WineFilter>(new WineFilter(), new WinePageLoader(wineRepository));
+    		wines.setMaxResults(50);
+    		wines.setMetrics(clientMetrics, "WineRepository.findByFilterAfter");
+    		return wines;
+    	}
+    	
+    	/**
+    	 * Disposer method for all keyset query components
     	 * Not sure why CDI does not call @PreDestroy on produced objects
+    	 * The vineyards displayed are saved in the local cache before being discarded
     	 */
-    	public void destroyPagedQuery(@Disposes PagedQuery<?, ?> pagedQuery) {
-    		pagedQuery.clear();
+    	public void destroyKeysetQuery(@Disposes KeysetQuery<?, ?> keysetQuery, VineyardCache vineyardCache) {
+    		if (keysetQuery.getItems() == vineyardCache.getAttached())
+    			vineyardCache.save();
+    		keysetQuery.clear();
     	}
         
     	/**
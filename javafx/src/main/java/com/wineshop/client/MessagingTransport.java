@@ -0,0 +1,102 @@
+/*
+  GRANITE DATA SERVICES
+  Copyright (C) 2011 GRANITE DATA SERVICES S.A.S.
+
+  This file is part of Granite Data Services.
+
+  Granite Data Services is free software; you can redistribute it and/or modify
+  it under the terms of the GNU Lesser General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or (at your
+  option) any later version.
+
+  Granite Data Services is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+  FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+  for more details.
+
+  You should have received a copy of the GNU Lesser General Public License
+  along with this library; if not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.wineshop.client;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.prefs.Preferences;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Selects the transport of the messaging channel (data updates of wineshopTopic)
+ * 
+ * The system property wineshop.transport can be set to websocket, longpolling or auto (default).
+ * In auto mode, the transport is the one found available for the server at the previous start, 
+ * long-polling the first time. The WebSocket endpoint of the server is probed in the background 
+ * and the result is kept in the user preferences for the next start, so the startup never waits 
+ * for the probe. When the WebSocket endpoint has been removed since the previous start, messaging 
+ * fails for the current run only and long-polling is used from the next start.
+ */
+public class MessagingTransport {
+	
+	private static final Logger log = LoggerFactory.getLogger(MessagingTransport.class);
+	
+	public static final String TRANSPORT_PROPERTY = "wineshop.transport";
+	
+	private static final String WEBSOCKET_PATH = "/websocketamf/amf";
+	private static final int PROBE_TIMEOUT = 2000;
+	
+	public static boolean useWebSocket(final String contextRoot, final String serverName, final int serverPort) {
+		String transport = System.getProperty(TRANSPORT_PROPERTY, "auto");
+		if ("websocket".equalsIgnoreCase(transport))
+			return true;
+		if ("longpolling".equalsIgnoreCase(transport))
+			return false;
+		
+		final Preferences preferences = Preferences.userNodeForPackage(MessagingTransport.class);
+		final String key = "websocket." + serverName + ":" + serverPort + contextRoot;
+		final boolean webSocket = preferences.getBoolean(key, false);
+		log.info("Messaging transport: {}", webSocket ? "websocket" : "long-polling");
+		
+		Thread probe = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				boolean available = isWebSocketDeployed(contextRoot, serverName, serverPort);
+				if (available != webSocket)
+					log.info("WebSocket endpoint {}, messaging will use {} at next start", available ? "found" : "not found", available ? "websocket" : "long-polling");
+				preferences.putBoolean(key, available);
+			}
+		}, "wineshop-transport-probe");
+		probe.setDaemon(true);
+		probe.start();
+		return webSocket;
+	}
+	
+	/**
+	 * A plain HTTP request on the WebSocket endpoint is refused by the WebSocket servlet 
+	 * but answered with 404 when the endpoint does not exist
+	 */
+	private static boolean isWebSocketDeployed(String contextRoot, String serverName, int serverPort) {
+		HttpURLConnection connection = null;
+		try {
+			URL url = new URL("http", serverName, serverPort, contextRoot + WEBSOCKET_PATH);
+			connection = (HttpURLConnection)url.openConnection();
+			connection.setConnectTimeout(PROBE_TIMEOUT);
+			connection.setReadTimeout(PROBE_TIMEOUT);
+			connection.setRequestMethod("GET");
+			int status = connection.getResponseCode();
+			return status != HttpURLConnection.HTTP_NOT_FOUND && status < HttpURLConnection.HTTP_INTERNAL_ERROR;
+		}
+		catch (IOException e) {
+			log.debug("WebSocket endpoint not reachable", e);
+			return false;
+		}
+		finally {
+			if (connection != null)
+				connection.disconnect();
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*
+  GRANITE DATA SERVICES
+  Copyright (C) 2011 GRANITE DATA SERVICES S.A.S.
+
+  This file is part of Granite Data Services.
+
+  Granite Data Services is free software; you can redistribute it and/or modify
+  it under the terms of the GNU Lesser General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or (at your
+  option) any later version.
+
+  Granite Data Services is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+  FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+  for more details.
+
+  You should have received a copy of the GNU Lesser General Public License
+  along with this library; if not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.wineshop.client;
+
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
+import javafx.util.converter.IntegerStringConverter;
+
+import com.wineshop.client.entities.Wine;
+import com.wineshop.client.entities.Wine$Type;
+
+
+/**
+ * Editor of a wine in a list view
+ * 
+ * The controls of the cell are built once and bound to the wine displayed by the cell, 
+ * a cell is only rebound when the list view reuses it for another wine while scrolling.
+ * The list of wine types is shared by all cells.
+ */
+public class WineListCell extends ListCell<Wine> {
+	
+	static final ObservableList<Wine$Type> TYPES = 
+		FXCollections.unmodifiableObservableList(FXCollections.observableArrayList(Wine$Type.values()));
+	
+	static final IntegerStringConverter YEAR_CONVERTER = new IntegerStringConverter();
+	
+	private final HBox hbox = new HBox();
+	private final TextField fieldName = new TextField();
+	private final TextField fieldYear = new TextField();
+	private final ChoiceBox<Wine$Type> choiceType = new ChoiceBox<Wine$Type>(TYPES);
+	
+	private Wine boundWine = null;
+	// True while the choice box is updated from the wine, so the selection is not written back
+	private boolean selectingType = false;
+	
+	private final ChangeListener<Wine$Type> selectionListener = new ChangeListener<Wine$Type>() {
+		@Override
+		public void changed(ObservableValue<? extends Wine$Type> property, Wine$Type oldValue, Wine$Type newValue) {
+			if (boundWine != null && !selectingType)
+				boundWine.setType(newValue);
+		}
+	};
+	
+	private final ChangeListener<Wine$Type> typeListener = new ChangeListener<Wine$Type>() {
+		@Override
+		public void changed(ObservableValue<? extends Wine$Type> property, Wine$Type oldValue, Wine$Type newValue) {
+			selectType(newValue);
+		}
+	};
+	
+	
+	public WineListCell() {
+		fieldYear.setPrefWidth(40);
+		choiceType.getSelectionModel().selectedItemProperty().addListener(selectionListener);
+		hbox.setSpacing(5.0);
+		hbox.getChildren().addAll(fieldName, fieldYear, choiceType);
+	}
+	
+	@Override
+	protected void updateItem(Wine wine, boolean empty) {
+		super.updateItem(wine, empty);
+		
+		Wine item = empty ? null : wine;
+		if (item != boundWine) {
+			if (boundWine != null)
+				unbind(boundWine);
+			boundWine = item;
+			if (item != null)
+				bind(item);
+		}
+		setGraphic(item != null ? hbox : null);
+	}
+	
+	private void bind(Wine wine) {
+		fieldName.textProperty().bindBidirectional(wine.nameProperty());
+		fieldYear.textProperty().bindBidirectional(wine.yearProperty(), YEAR_CONVERTER);
+		selectType(wine.getType());
+		wine.typeProperty().addListener(typeListener);
+	}
+	
+	private void unbind(Wine wine) {
+		fieldName.textProperty().unbindBidirectional(wine.nameProperty());
+		fieldYear.textProperty().unbindBidirectional(wine.yearProperty());
+		wine.typeProperty().removeListener(typeListener);
+	}
+	
+	private void selectType(Wine$Type type) {
+		selectingType = true;
+		try {
+			choiceType.getSelectionModel().select(type);
+		}
+		finally {
+			selectingType = false;
+		}
+	}
+}
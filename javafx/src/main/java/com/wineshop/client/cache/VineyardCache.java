@@ -0,0 +1,288 @@
+/*
+  GRANITE DATA SERVICES
+  Copyright (C) 2011 GRANITE DATA SERVICES S.A.S.
+
+  This file is part of Granite Data Services.
+
+  Granite Data Services is free software; you can redistribute it and/or modify
+  it under the terms of the GNU Lesser General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or (at your
+  option) any later version.
+
+  Granite Data Services is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+  FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+  for more details.
+
+  You should have received a copy of the GNU Lesser General Public License
+  along with this library; if not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.wineshop.client.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javafx.beans.value.WritableValue;
+
+import org.granite.client.tide.data.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wineshop.client.collections.KeysetQuery;
+import com.wineshop.client.entities.Address;
+import com.wineshop.client.entities.Vineyard;
+
+
+/**
+ * Local copy of the last displayed vineyards, so that the table can be painted 
+ * at startup before the first page is received from the server
+ * 
+ * Each server and user has its own file, only read once the user is logged in, and the file
+ * of a user is deleted on logout so the vineyards are not kept on shared machines.
+ * 
+ * Vineyards are stored in a compact binary file (written to a temporary file then renamed, so 
+ * an interrupted write never corrupts the previous copy) with their uid and version. Once loaded,
+ * they are merged in the entity manager: the pages received from the server are then merged into
+ * the same instances, the pages are reconciled with the displayed rows by {@link KeysetQuery} and only
+ * the vineyards that changed, moved or were removed are updated in the table. Wines are not
+ * cached, they are loaded by pages when a vineyard is displayed in the form.
+ */
+public class VineyardCache {
+	
+	private static final Logger log = LoggerFactory.getLogger(VineyardCache.class);
+	
+	private static final int MAGIC = 0x57534843;	// "WSHC"
+	private static final int FORMAT_VERSION = 2;
+	
+	private final File directory;
+	private final String server;
+	private final int maxVineyards;
+	private File file;
+	private List<Vineyard> vineyards = Collections.emptyList();
+	
+	/**
+	 * @param directory directory of the cache files
+	 * @param server server of the cached vineyards (host, port and context root)
+	 * @param maxVineyards maximum number of vineyards saved
+	 */
+	public VineyardCache(File directory, String server, int maxVineyards) {
+		this.directory = directory;
+		this.server = server;
+		this.maxVineyards = maxVineyards;
+	}
+	
+	/**
+	 * Default cache directory in the user home directory
+	 */
+	public static File defaultDirectory() {
+		return new File(System.getProperty("user.home"), ".wineshop");
+	}
+	
+	/**
+	 * Preloads the vineyards cached for the user in the query and keeps its elements to be saved on {@link #save()}
+	 * The cached vineyards are merged in the entity manager so the first page received from the server 
+	 * is merged into the same instances (by uid), and is only applied when the version has changed
+	 * 
+	 * @param username logged in user, nothing is preloaded nor saved when null
+	 */
+	@SuppressWarnings("unchecked")
+	public void attach(String username, EntityManager entityManager, KeysetQuery<Vineyard, ?> query) {
+		if (username == null) {
+			file = null;
+			vineyards = Collections.emptyList();
+			return;
+		}
+		// File shared by all the users in previous versions
+		new File(directory, "vineyards.cache").delete();
+		file = new File(directory, fileName(server, username));
+		List<Vineyard> cached = load();
+		if (!cached.isEmpty())
+			query.preload((List<Vineyard>)entityManager.mergeExternalData(cached));
+		vineyards = query.getItems();
+	}
+	
+	/**
+	 * Name of the cache file of a user on a server, readable and without collisions
+	 */
+	static String fileName(String server, String username) {
+		String key = server + "-" + username;
+		return "vineyards-" + key.replaceAll("[^A-Za-z0-9.-]", "_") + "-" + Integer.toHexString(key.hashCode()) + ".cache";
+	}
+	
+	/**
+	 * Elements of the attached query
+	 */
+	public List<Vineyard> getAttached() {
+		return vineyards;
+	}
+	
+	public List<Vineyard> load() {
+		if (file == null || !file.exists())
+			return Collections.emptyList();
+		
+		long start = System.nanoTime();
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				log.info("Ignoring vineyard cache with unknown format: {}", file);
+				return Collections.emptyList();
+			}
+			int count = in.readInt();
+			List<Vineyard> vineyards = new ArrayList<Vineyard>(count);
+			for (int i = 0; i < count; i++)
+				vineyards.add(readVineyard(in));
+			log.debug("Loaded {} cached vineyards in {} ms", count, (System.nanoTime() - start) / 1000000L);
+			return vineyards;
+		}
+		catch (Exception e) {
+			log.warn("Could not read vineyard cache " + file, e);
+			return Collections.emptyList();
+		}
+		finally {
+			close(in);
+		}
+	}
+	
+	/**
+	 * Writes the vineyards of the attached query
+	 */
+	public void save() {
+		save(vineyards);
+	}
+	
+	public void save(List<Vineyard> vineyards) {
+		if (file == null)
+			return;
+		List<Vineyard> saved = new ArrayList<Vineyard>();
+		for (Vineyard vineyard : vineyards) {
+			// New vineyards not yet saved on the server are not cached
+			if (vineyard.getId() != null && saved.size() < maxVineyards)
+				saved.add(vineyard);
+		}
+		
+		File tmpFile = new File(file.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			file.getParentFile().mkdirs();
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(saved.size());
+			for (Vineyard vineyard : saved)
+				writeVineyard(out, vineyard);
+			out.close();
+			out = null;
+			if (file.exists() && !file.delete())
+				throw new IOException("Could not replace " + file);
+			if (!tmpFile.renameTo(file))
+				throw new IOException("Could not rename " + tmpFile);
+			log.debug("Saved {} vineyards in cache", saved.size());
+		}
+		catch (IOException e) {
+			log.warn("Could not write vineyard cache " + file, e);
+		}
+		finally {
+			close(out);
+		}
+	}
+	
+	/**
+	 * Deletes the cached data of the attached user, nothing is saved until the next {@link #attach}
+	 */
+	public void clear() {
+		vineyards = Collections.emptyList();
+		if (file != null && file.exists() && !file.delete())
+			log.warn("Could not delete vineyard cache {}", file);
+		file = null;
+	}
+	
+	private static void writeVineyard(DataOutputStream out, Vineyard vineyard) throws IOException {
+		writeIdentity(out, vineyard.getId(), vineyard.getUid(), vineyard.getVersion());
+		writeString(out, vineyard.getName());
+		writeString(out, vineyard.getAddress() != null ? vineyard.getAddress().getAddress() : null);
+		out.writeInt(vineyard.getWineCount());
+	}
+	
+	private static Vineyard readVineyard(DataInputStream in) throws IOException {
+		Vineyard vineyard = new Vineyard();
+		readIdentity(in, vineyard);
+		vineyard.setName(readString(in));
+		vineyard.setAddress(new Address());
+		vineyard.getAddress().setAddress(readString(in));
+		setField(vineyard, "wineCount", in.readInt());
+		return vineyard;
+	}
+	
+	private static void writeIdentity(DataOutputStream out, Long id, String uid, Integer version) throws IOException {
+		out.writeLong(id);
+		writeString(out, uid);
+		out.writeInt(version != null ? version : Integer.MIN_VALUE);
+	}
+	
+	private static void readIdentity(DataInputStream in, Object entity) throws IOException {
+		setField(entity, "id", in.readLong());
+		setField(entity, "uid", readString(in));
+		int version = in.readInt();
+		setField(entity, "version", version != Integer.MIN_VALUE ? version : null);
+	}
+	
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null)
+			out.writeUTF(value);
+	}
+	
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+	
+	/**
+	 * Sets the id, uid, version or wine count of an entity, which are read-only properties of the generated entities
+	 */
+	@SuppressWarnings("unchecked")
+	private static void setField(Object entity, String name, Object value) throws IOException {
+		for (Class<?> c = entity.getClass(); c != null; c = c.getSuperclass()) {
+			try {
+				Field field = c.getDeclaredField(name);
+				field.setAccessible(true);
+				Object property = field.get(entity);
+				if (property instanceof WritableValue)
+					((WritableValue<Object>)property).setValue(value);
+				else
+					field.set(entity, value);
+				return;
+			}
+			catch (NoSuchFieldException e) {
+				// Look in superclass
+			}
+			catch (IllegalAccessException e) {
+				throw new IOException("Could not set " + name + " of " + entity, e);
+			}
+		}
+		throw new IOException("No field " + name + " in " + entity.getClass());
+	}
+	
+	private static void close(java.io.Closeable closeable) {
+		if (closeable == null)
+			return;
+		try {
+			closeable.close();
+		}
+		catch (IOException e) {
+			// Ignore
+		}
+	}
+}
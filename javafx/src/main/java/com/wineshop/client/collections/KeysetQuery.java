@@ -0,0 +1,534 @@
+/*
+  GRANITE DATA SERVICES
+  Copyright (C) 2011 GRANITE DATA SERVICES S.A.S.
+
+  This file is part of Granite Data Services.
+
+  Granite Data Services is free software; you can redistribute it and/or modify
+  it under the terms of the GNU Lesser General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or (at your
+  option) any later version.
+
+  Granite Data Services is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+  FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+  for more details.
+
+  You should have received a copy of the GNU Lesser General Public License
+  along with this library; if not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.wineshop.client.collections;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.ReadOnlyLongProperty;
+import javafx.beans.property.ReadOnlyLongWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import org.granite.client.tide.server.SimpleTideResponder;
+import org.granite.client.tide.server.TideFaultEvent;
+import org.granite.client.tide.server.TideResponder;
+import org.granite.client.tide.server.TideResultEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wineshop.client.metrics.ClientMetrics;
+
+
+/**
+ * Observable list of remote entities loaded with keyset (seek) pagination.
+ * 
+ * Each page is requested relative to the last loaded element instead of an offset,
+ * so loading page N costs the server the same as loading page 1. Pages can only be
+ * appended in order, which fits a table loading more rows as the user scrolls down.
+ * 
+ * A refresh cancels the request in progress, and responses of superseded requests
+ * are ignored, so stale results never replace newer ones.
+ * 
+ * Elements known beforehand (e.g. from a local cache) can be preloaded to be displayed
+ * immediately. They are reconciled with the pages received from the server: the preloaded
+ * elements received again stay in place or are moved, the new ones are inserted, and the
+ * preloaded elements not yet received stay displayed after the loaded pages until the result
+ * is complete, when those that are not part of it are removed.
+ * 
+ * The view reports the displayed rows with {@link #scrolledTo(int)}: the next page is read ahead 
+ * when the remaining rows would be displayed, at the current scroll velocity, in less time than 
+ * a round trip. Received pages are kept in a bounded LRU cache, by filter and sort order, so switching
+ * back to a previous sort order ({@link #setSort}) or filter ({@link #applyFilter()}) within 
+ * {@link #setMaxCacheAge maxCacheAge} does not need a remote call. The cached elements are the managed
+ * instances, kept up to date by data updates, only elements created or deleted meanwhile can be missing
+ * or remain. {@link #refresh()} discards the cache to get the current result. Hits (pages available when needed) and misses
+ * (the view had to wait for a remote call) are counted to tune the page size.
+ * 
+ * When client metrics are set, the remote calls and the time taken to append each page to 
+ * the list on the FX thread are recorded under the given operation name.
+ * 
+ * @param <E> type of elements
+ * @param <F> type of filter
+ */
+public class KeysetQuery<E, F> {
+	
+	private static final Logger log = LoggerFactory.getLogger(KeysetQuery.class);
+	
+	/**
+	 * Remote call fetching the page following a given element
+	 */
+	public interface PageLoader<E, F> {
+		
+		/**
+		 * @param filter current filter
+		 * @param sort sort properties or null for the default order
+		 * @param desc true for descending order of each sort property
+		 * @param last last element of the previous page or null for the first page
+		 * @param maxResults page size
+		 * @param responder responder receiving the page
+		 * @return future of the remote call, used to cancel it
+		 */
+		public Future<List<E>> load(F filter, String[] sort, boolean[] desc, E last, int maxResults, TideResponder<List<E>> responder);
+		
+		/**
+		 * Key of the page cache for the current state of the filter, the filter instance is modified in place
+		 * so the key must be a copy of its criteria with equals and hashCode (e.g. a string or a list)
+		 * 
+		 * @param filter current filter
+		 * @return value equal to the keys returned for the same criteria
+		 */
+		public Object filterKey(F filter);
+	}
+	
+	/**
+	 * Page received from the server and the time it was received, for the page cache
+	 */
+	private static class CachedPage<E> {
+		
+		private final List<E> elements;
+		private final long time = System.currentTimeMillis();
+		
+		public CachedPage(List<E> elements) {
+			this.elements = elements;
+		}
+	}
+	
+	
+	private final ObservableList<E> items = FXCollections.observableArrayList();
+	private final F filter;
+	private final PageLoader<E, F> pageLoader;
+	
+	private int maxResults = 25;
+	private String[] sort;
+	private boolean[] desc;
+	
+	private final ReadOnlyBooleanWrapper loading = new ReadOnlyBooleanWrapper(this, "loading", false);
+	private final ReadOnlyBooleanWrapper complete = new ReadOnlyBooleanWrapper(this, "complete", false);
+	private final ReadOnlyBooleanWrapper preloaded = new ReadOnlyBooleanWrapper(this, "preloaded", false);
+	// Preloaded elements displayed after the loaded pages and not yet received from the server
+	private final Set<E> unconfirmed = new HashSet<E>();
+	private final ReadOnlyLongWrapper queryTime = new ReadOnlyLongWrapper(this, "queryTime", 0L);
+	private final ReadOnlyLongWrapper hits = new ReadOnlyLongWrapper(this, "hits", 0L);
+	private final ReadOnlyLongWrapper misses = new ReadOnlyLongWrapper(this, "misses", 0L);
+	
+	private int maxReadAheadPages = 4;
+	private int maxCachedPages = 20;
+	private long maxCacheAge = 30000L;
+	
+	@SuppressWarnings("serial")
+	private final Map<List<Object>, CachedPage<E>> pageCache = new LinkedHashMap<List<Object>, CachedPage<E>>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<List<Object>, CachedPage<E>> eldest) {
+			return size() > maxCachedPages;
+		}
+	};
+	
+	// Scroll velocity in rows per second and round-trip time in milliseconds, smoothed over the last samples
+	private double velocity = 0.0;
+	private double latency = 0.0;
+	private int scrollIndex = -1;
+	private long scrollTime = 0L;
+	// True when the view reached the last row while the page being loaded was read ahead
+	private boolean stalled = false;
+	
+	// Incremented on each refresh so responses of superseded requests are ignored
+	private int generation = 0;
+	private Future<List<E>> pending = null;
+	
+	private ClientMetrics metrics;
+	private String operation;
+	
+	
+	public KeysetQuery(F filter, PageLoader<E, F> pageLoader) {
+		this.filter = filter;
+		this.pageLoader = pageLoader;
+	}
+	
+	/**
+	 * @param metrics client metrics recording the page loads
+	 * @param operation name of the remote operation loading the pages
+	 */
+	public void setMetrics(ClientMetrics metrics, String operation) {
+		this.metrics = metrics;
+		this.operation = operation;
+	}
+	
+	public ObservableList<E> getItems() {
+		return items;
+	}
+	
+	public F getFilter() {
+		return filter;
+	}
+	
+	public int getMaxResults() {
+		return maxResults;
+	}
+	
+	public void setMaxResults(int maxResults) {
+		this.maxResults = maxResults;
+	}
+	
+	public String[] getSort() {
+		return sort;
+	}
+	
+	public boolean[] getDesc() {
+		return desc;
+	}
+	
+	/**
+	 * Changes the sort order and reloads from the first page when it differs from the current one
+	 * 
+	 * @param sort sort properties by priority, or null for the default order
+	 * @param desc true for descending order of each sort property
+	 */
+	public void setSort(String[] sort, boolean[] desc) {
+		if (Arrays.equals(sort, this.sort) && Arrays.equals(desc, this.desc))
+			return;
+		this.sort = sort;
+		this.desc = desc;
+		reload();
+	}
+	
+	public ReadOnlyBooleanProperty loadingProperty() {
+		return loading.getReadOnlyProperty();
+	}
+	
+	public boolean isLoading() {
+		return loading.get();
+	}
+	
+	public ReadOnlyBooleanProperty completeProperty() {
+		return complete.getReadOnlyProperty();
+	}
+	
+	public boolean isComplete() {
+		return complete.get();
+	}
+	
+	/**
+	 * True while the items are preloaded elements not yet replaced by a page received from the server
+	 */
+	public ReadOnlyBooleanProperty preloadedProperty() {
+		return preloaded.getReadOnlyProperty();
+	}
+	
+	public boolean isPreloaded() {
+		return preloaded.get();
+	}
+	
+	/**
+	 * Round-trip time in milliseconds of the last page received
+	 */
+	public ReadOnlyLongProperty queryTimeProperty() {
+		return queryTime.getReadOnlyProperty();
+	}
+	
+	public long getQueryTime() {
+		return queryTime.get();
+	}
+	
+	/**
+	 * Number of pages available when the view needed them, read ahead or found in the page cache
+	 */
+	public ReadOnlyLongProperty hitsProperty() {
+		return hits.getReadOnlyProperty();
+	}
+	
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * Number of pages the view had to wait for
+	 */
+	public ReadOnlyLongProperty missesProperty() {
+		return misses.getReadOnlyProperty();
+	}
+	
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	public int getMaxReadAheadPages() {
+		return maxReadAheadPages;
+	}
+	
+	/**
+	 * Maximum number of rows read ahead, in pages, when scrolling fast
+	 */
+	public void setMaxReadAheadPages(int maxReadAheadPages) {
+		this.maxReadAheadPages = maxReadAheadPages;
+	}
+	
+	public int getMaxCachedPages() {
+		return maxCachedPages;
+	}
+	
+	public void setMaxCachedPages(int maxCachedPages) {
+		this.maxCachedPages = maxCachedPages;
+	}
+	
+	public long getMaxCacheAge() {
+		return maxCacheAge;
+	}
+	
+	/**
+	 * Time in milliseconds after which a cached page is loaded again
+	 */
+	public void setMaxCacheAge(long maxCacheAge) {
+		this.maxCacheAge = maxCacheAge;
+	}
+	
+	/**
+	 * Displays elements until the first page is received, ignored when elements are already loaded
+	 */
+	public void preload(List<E> elements) {
+		if (!items.isEmpty() || loading.get() || elements.isEmpty())
+			return;
+		items.setAll(elements);
+		unconfirmed.addAll(elements);
+		preloaded.set(true);
+	}
+	
+	/**
+	 * Loads the first page after a change of the filter, using the pages cached for this filter
+	 */
+	public void applyFilter() {
+		reload();
+	}
+	
+	/**
+	 * Discards the loaded and cached elements and loads the first page, preloaded elements stay displayed until it is received
+	 */
+	public void refresh() {
+		pageCache.clear();
+		reload();
+	}
+	
+	private void reload() {
+		cancel();
+		if (!preloaded.get()) {
+			unconfirmed.clear();
+			items.clear();
+		}
+		scrollIndex = -1;
+		fetch(false);
+	}
+	
+	/**
+	 * Loads the page following the last loaded element, unless a page is already being loaded
+	 * or the end of the result has been reached
+	 */
+	public void next() {
+		if (loading.get() || complete.get() || preloaded.get())
+			return;
+		fetch(false);
+	}
+	
+	/**
+	 * Notifies that the row at index is displayed, loads the next pages in advance depending on the scroll velocity
+	 */
+	public void scrolledTo(int index) {
+		if (index < 0 || preloaded.get())
+			return;
+		
+		// Rows are updated in any order during a layout, the velocity is measured on the furthest displayed row
+		long now = System.nanoTime();
+		if (scrollIndex < 0) {
+			scrollIndex = index;
+			scrollTime = now;
+		}
+		else if (index > scrollIndex && now - scrollTime > 50000000L) {
+			double sample = (index - scrollIndex) * 1000000000.0 / (now - scrollTime);
+			velocity = velocity * 0.5 + sample * 0.5;
+			scrollIndex = index;
+			scrollTime = now;
+		}
+		
+		if (complete.get())
+			return;
+		int remaining = loadedSize() - 1 - index;
+		if (remaining <= 0) {
+			if (!loading.get())
+				fetch(false);
+			else if (!stalled) {
+				stalled = true;
+				misses.set(misses.get() + 1);
+			}
+		}
+		else if (!loading.get() && remaining < readAheadRows())
+			fetch(true);
+	}
+	
+	/**
+	 * Rows displayed during a round trip at the current velocity, with a margin, at least half a page
+	 */
+	private int readAheadRows() {
+		double rows = 2.0 * velocity * latency / 1000.0;
+		return (int)Math.max(maxResults / 2, Math.min(rows, maxReadAheadPages * maxResults));
+	}
+	
+	/**
+	 * Discards the loaded elements, cached pages and any pending request
+	 */
+	public void clear() {
+		cancel();
+		pageCache.clear();
+		preloaded.set(false);
+		unconfirmed.clear();
+		items.clear();
+	}
+	
+	private void cancel() {
+		generation++;
+		if (pending != null) {
+			pending.cancel(true);
+			pending = null;
+		}
+		loading.set(false);
+		complete.set(false);
+		stalled = false;
+	}
+	
+	/**
+	 * @param readAhead true when the page is loaded before the view needs it
+	 */
+	private void fetch(final boolean readAhead) {
+		final int requestGeneration = generation;
+		final long start = System.nanoTime();
+		int loadedSize = loadedSize();
+		E last = loadedSize == 0 || preloaded.get() ? null : items.get(loadedSize-1);
+		final List<Object> key = Arrays.asList(pageLoader.filterKey(filter), Arrays.toString(sort), Arrays.toString(desc), last, maxResults);
+		
+		final CachedPage<E> cachedPage = pageCache.get(key);
+		if (cachedPage != null && System.currentTimeMillis() - cachedPage.time < maxCacheAge) {
+			hits.set(hits.get() + 1);
+			// Not added immediately as the view may be in the middle of a layout
+			loading.set(true);
+			Platform.runLater(new Runnable() {
+				@Override
+				public void run() {
+					if (requestGeneration != generation)
+						return;
+					loading.set(false);
+					addPage(cachedPage.elements);
+				}
+			});
+			return;
+		}
+		
+		if (!readAhead)
+			misses.set(misses.get() + 1);
+		stalled = !readAhead;
+		loading.set(true);
+		
+		TideResponder<List<E>> responder = new SimpleTideResponder<List<E>>() {
+			@Override
+			public void result(TideResultEvent<List<E>> event) {
+				if (requestGeneration != generation)
+					return;
+				List<E> page = event.getResult();
+				pending = null;
+				queryTime.set((System.nanoTime() - start) / 1000000L);
+				latency = latency == 0.0 ? queryTime.get() : latency * 0.75 + queryTime.get() * 0.25;
+				log.debug("Loaded {} elements in {} ms", page.size(), queryTime.get());
+				if (readAhead && !stalled)
+					hits.set(hits.get() + 1);
+				stalled = false;
+				loading.set(false);
+				pageCache.put(key, new CachedPage<E>(page));
+				addPage(page);
+				
+				// Continue reading ahead while the view gets closer to the end than the read-ahead distance
+				if (scrollIndex >= 0)
+					scrolledTo(scrollIndex);
+			}
+			
+			@Override
+			public void fault(TideFaultEvent event) {
+				if (requestGeneration != generation)
+					return;
+				pending = null;
+				stalled = false;
+				loading.set(false);
+				log.error("Could not load page: " + event.getFault().getFaultDescription());
+			}
+		};
+		if (metrics != null)
+			responder = metrics.timed(operation, responder);
+		pending = pageLoader.load(filter, sort, desc, last, maxResults, responder);
+	}
+	
+	private void addPage(List<E> page) {
+		long start = System.nanoTime();
+		complete.set(page.size() < maxResults);
+		preloaded.set(false);
+		if (unconfirmed.isEmpty())
+			items.addAll(page);
+		else
+			reconcile(page);
+		if (metrics != null)
+			metrics.latency("fx.page." + operation).record(ClientMetrics.micros(start));
+	}
+	
+	/**
+	 * Number of elements loaded from the server, before the unconfirmed preloaded elements
+	 */
+	private int loadedSize() {
+		int size = items.size();
+		while (size > 0 && unconfirmed.contains(items.get(size-1)))
+			size--;
+		return size;
+	}
+	
+	/**
+	 * Appends a page to the loaded elements, reusing the rows of the preloaded elements it contains
+	 */
+	private void reconcile(List<E> page) {
+		int index = loadedSize();
+		for (E element : page) {
+			unconfirmed.remove(element);
+			int found = items.subList(index, items.size()).indexOf(element);
+			if (found > 0)
+				items.remove(index + found);
+			if (found != 0)
+				items.add(index, element);
+			else if (items.get(index) != element)
+				items.set(index, element);
+			index++;
+		}
+		if (complete.get()) {
+			items.remove(index, items.size());
+			unconfirmed.clear();
+		}
+	}
+}
@@ -0,0 +1,294 @@
+/*
+  GRANITE DATA SERVICES
+  Copyright (C) 2011 GRANITE DATA SERVICES S.A.S.
+
+  This file is part of Granite Data Services.
+
+  Granite Data Services is free software; you can redistribute it and/or modify
+  it under the terms of the GNU Lesser General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or (at your
+  option) any later version.
+
+  Granite Data Services is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+  FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+  for more details.
+
+  You should have received a copy of the GNU Lesser General Public License
+  along with this library; if not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.wineshop.client.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.granite.client.tide.server.TideFaultEvent;
+import org.granite.client.tide.server.TideResponder;
+import org.granite.client.tide.server.TideResultEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wineshop.metrics.Histogram;
+import com.wineshop.metrics.HistogramSnapshot;
+
+
+/**
+ * Latency and size histograms of the client hot paths
+ * 
+ * Remote calls are measured by wrapping their responder with {@link #timed}: the latency covers the 
+ * round trip and the merge of the result in the Tide context, which happens before the responder is called.
+ * The UI thread integration records the time taken by each task applied on the FX thread (merge of 
+ * data updates and of remote results) and the time the FX thread is blocked by each batch.
+ * 
+ * The metrics are registered in JMX on {@link #start} and a summary of the values recorded in each 
+ * interval is logged every wineshop.metrics.logInterval seconds (60 by default, 0 to disable).
+ */
+public class ClientMetrics implements ClientMetricsMXBean {
+	
+	private static final Logger log = LoggerFactory.getLogger(ClientMetrics.class);
+	
+	public static final String OBJECT_NAME = "com.wineshop.client:type=ClientMetrics";
+	public static final String LOG_INTERVAL_PROPERTY = "wineshop.metrics.logInterval";
+	
+	private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+	private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+	
+	private final long logInterval;
+	private ScheduledExecutorService scheduler;
+	private ObjectName objectName;
+	private Map<String, HistogramSnapshot> lastLogged = new HashMap<String, HistogramSnapshot>();
+	
+	
+	/**
+	 * Interval (s) set by the system property wineshop.metrics.logInterval, 60 by default
+	 */
+	public static long defaultLogInterval() {
+		return Long.getLong(LOG_INTERVAL_PROPERTY, 60L);
+	}
+	
+	/**
+	 * @param logInterval interval (s) between two logged summaries, 0 to disable the summary
+	 */
+	public ClientMetrics(long logInterval) {
+		this.logInterval = logInterval;
+	}
+	
+	
+	public synchronized void start() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(this, name);
+				objectName = name;
+			}
+		}
+		catch (JMException e) {
+			log.warn("Could not register client metrics in JMX", e);
+		}
+		
+		if (logInterval > 0) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "wineshop-metrics");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			scheduler.scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					logSummary();
+				}
+			}, logInterval, logInterval, TimeUnit.SECONDS);
+		}
+	}
+	
+	public synchronized void stop() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+			logSummary();
+		}
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			}
+			catch (JMException e) {
+				log.debug("Could not unregister client metrics", e);
+			}
+			objectName = null;
+		}
+	}
+	
+	
+	/**
+	 * Histogram of durations recorded in microseconds and reported in milliseconds
+	 */
+	public Histogram latency(String name) {
+		return histogram(name, "ms", 1000.0);
+	}
+	
+	/**
+	 * Histogram of sizes, in number of objects
+	 */
+	public Histogram size(String name) {
+		return histogram(name, "objects", 1.0);
+	}
+	
+	private Histogram histogram(String name, String unit, double scale) {
+		Histogram histogram = histograms.get(name);
+		if (histogram == null) {
+			Histogram created = new Histogram(name, unit, scale);
+			histogram = histograms.putIfAbsent(name, created);
+			if (histogram == null)
+				histogram = created;
+		}
+		return histogram;
+	}
+	
+	public void increment(String name) {
+		AtomicLong counter = counters.get(name);
+		if (counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = counters.putIfAbsent(name, created);
+			if (counter == null)
+				counter = created;
+		}
+		counter.incrementAndGet();
+	}
+	
+	/**
+	 * Microseconds elapsed since a System.nanoTime() value
+	 */
+	public static long micros(long startNanos) {
+		return (System.nanoTime() - startNanos) / 1000L;
+	}
+	
+	/**
+	 * Wraps the responder of a remote call to record its latency, the size of its result and its faults
+	 * 
+	 * The call is timed from the creation of the wrapper, so it should be created as an argument of the call.
+	 * 
+	 * @param operation name of the operation, usually Component.method
+	 * @param responder responder of the call, may be null
+	 * @return responder to pass to the remote call
+	 */
+	public <T> TideResponder<T> timed(String operation, TideResponder<T> responder) {
+		return new TimedResponder<T>(operation, responder);
+	}
+	
+	private class TimedResponder<T> implements TideResponder<T> {
+		
+		private final String operation;
+		private final TideResponder<T> responder;
+		private final long start = System.nanoTime();
+		
+		public TimedResponder(String operation, TideResponder<T> responder) {
+			this.operation = operation;
+			this.responder = responder;
+		}
+		
+		@Override
+		public void result(TideResultEvent<T> event) {
+			latency("remote." + operation).record(micros(start));
+			size("remote." + operation + ".result").record(sizeOf(event.getResult()));
+			if (responder != null)
+				responder.result(event);
+		}
+		
+		@Override
+		public void fault(TideFaultEvent event) {
+			latency("remote." + operation).record(micros(start));
+			increment("remote." + operation + ".faults");
+			log.warn("Remote call {} failed: {}", operation, event.getFault() != null ? event.getFault().getFaultDescription() : null);
+			if (responder != null)
+				responder.fault(event);
+		}
+	}
+	
+	private static long sizeOf(Object result) {
+		if (result == null)
+			return 0;
+		if (result instanceof Collection<?>)
+			return ((Collection<?>)result).size();
+		if (result instanceof Map<?, ?>)
+			return ((Map<?, ?>)result).size();
+		if (result instanceof Object[])
+			return ((Object[])result).length;
+		return 1;
+	}
+	
+	
+	@Override
+	public List<HistogramSnapshot> getHistograms() {
+		return new ArrayList<HistogramSnapshot>(snapshots().values());
+	}
+	
+	@Override
+	public Map<String, Long> getCounters() {
+		Map<String, Long> values = new TreeMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> counter : counters.entrySet())
+			values.put(counter.getKey(), counter.getValue().get());
+		return values;
+	}
+	
+	@Override
+	public String getSummary() {
+		StringBuilder sb = new StringBuilder();
+		for (HistogramSnapshot snapshot : snapshots().values())
+			sb.append(snapshot).append('\n');
+		for (Map.Entry<String, Long> counter : getCounters().entrySet())
+			sb.append(counter.getKey()).append(": ").append(counter.getValue()).append('\n');
+		return sb.toString();
+	}
+	
+	@Override
+	public void reset() {
+		for (Histogram histogram : histograms.values())
+			histogram.reset();
+		counters.clear();
+	}
+	
+	private Map<String, HistogramSnapshot> snapshots() {
+		Map<String, HistogramSnapshot> snapshots = new TreeMap<String, HistogramSnapshot>();
+		for (Histogram histogram : histograms.values())
+			snapshots.put(histogram.getName(), histogram.snapshot());
+		return snapshots;
+	}
+	
+	/**
+	 * Logs the values recorded since the previous summary
+	 */
+	synchronized void logSummary() {
+		Map<String, HistogramSnapshot> snapshots = snapshots();
+		StringBuilder sb = new StringBuilder();
+		for (HistogramSnapshot snapshot : snapshots.values()) {
+			HistogramSnapshot interval = snapshot.since(lastLogged.get(snapshot.getName()));
+			if (interval.getCount() > 0)
+				sb.append("\n  ").append(interval);
+		}
+		lastLogged = snapshots;
+		if (sb.length() > 0)
+			log.info("Client metrics over the last {} s:{}", logInterval, sb);
+	}
+}
@@ -0,0 +1,51 @@
+/*
+  GRANITE DATA SERVICES
+  Copyright (C) 2011 GRANITE DATA SERVICES S.A.S.
+
+  This file is part of Granite Data Services.
+
+  Granite Data Services is free software; you can redistribute it and/or modify
+  it under the terms of the GNU Lesser General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or (at your
+  option) any later version.
+
+  Granite Data Services is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+  FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+  for more details.
+
+  You should have received a copy of the GNU Lesser General Public License
+  along with this library; if not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.wineshop.client.metrics;
+
+import java.util.List;
+import java.util.Map;
+
+import com.wineshop.metrics.HistogramSnapshot;
+
+
+/**
+ * JMX view of the client metrics, registered as com.wineshop.client:type=ClientMetrics
+ */
+public interface ClientMetricsMXBean {
+	
+	/**
+	 * Latency and size histograms since the start or the last reset, ordered by name
+	 */
+	public List<HistogramSnapshot> getHistograms();
+	
+	/**
+	 * Event counters (e.g. remote call faults) since the start or the last reset
+	 */
+	public Map<String, Long> getCounters();
+	
+	/**
+	 * Text summary of all histograms and counters
+	 */
+	public String getSummary();
+	
+	public void reset();
+}
@@ -0,0 +1,82 @@
+/*
+  GRANITE DATA SERVICES
+  Copyright (C) 2011 GRANITE DATA SERVICES S.A.S.
+
+  This file is part of Granite Data Services.
+
+  Granite Data Services is free software; you can redistribute it and/or modify
+  it under the terms of the GNU Lesser General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or (at your
+  option) any later version.
+
+  Granite Data Services is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+  FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+  for more details.
+
+  You should have received a copy of the GNU Lesser General Public License
+  along with this library; if not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.wineshop.client.services;
+
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.granite.client.tide.server.TideResponder;
+
+import com.wineshop.client.collections.KeysetQuery.PageLoader;
+import com.wineshop.client.entities.Vineyard;
+
+
+/**
+ * Loads pages of vineyards from {@link VineyardRepository#findByNameAfter} 
+ * 
+ * The keyset of the last element holds the values of the sort properties supported by the server.
+ * When the wines are displayed, they can be fetched with the page instead of being lazy-loaded for each vineyard.
+ */
+public class VineyardPageLoader implements PageLoader<Vineyard, Vineyard> {
+	
+	private final VineyardRepository vineyardRepository;
+	private final boolean fetchWines;
+	
+	public VineyardPageLoader(VineyardRepository vineyardRepository) {
+		this(vineyardRepository, false);
+	}
+	
+	public VineyardPageLoader(VineyardRepository vineyardRepository, boolean fetchWines) {
+		this.vineyardRepository = vineyardRepository;
+		this.fetchWines = fetchWines;
+	}
+	
+	@Override
+	public Future<List<Vineyard>> load(Vineyard filter, String[] sort, boolean[] desc, Vineyard last, int maxResults, TideResponder<List<Vineyard>> responder) {
+		Object[] lastValues = last != null ? sortValues(last, sort) : null;
+		Long lastId = last != null ? last.getId() : null;
+		if (fetchWines)
+			return vineyardRepository.findByNameAfterWithWines(filter.getName(), sort, desc, lastValues, lastId, maxResults, responder);
+		return vineyardRepository.findByNameAfter(filter.getName(), sort, desc, lastValues, lastId, maxResults, responder);
+	}
+	
+	@Override
+	public Object filterKey(Vineyard filter) {
+		return filter.getName() != null ? filter.getName() : "";
+	}
+	
+	private static Object[] sortValues(Vineyard vineyard, String[] sort) {
+		if (sort == null || sort.length == 0)
+			return new Object[] { vineyard.getName() };
+		Object[] values = new Object[sort.length];
+		for (int i = 0; i < sort.length; i++)
+			values[i] = sortValue(vineyard, sort[i]);
+		return values;
+	}
+	
+	private static Object sortValue(Vineyard vineyard, String sort) {
+		if ("address".equals(sort))
+			return vineyard.getAddress().getAddress();
+		if ("wineCount".equals(sort))
+			return vineyard.getWineCount();
+		return vineyard.getName();
+	}
+}
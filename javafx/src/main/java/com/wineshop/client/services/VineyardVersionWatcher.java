@@ -0,0 +1,105 @@
+/*
+  GRANITE DATA SERVICES
+  Copyright (C) 2011 GRANITE DATA SERVICES S.A.S.
+
+  This file is part of Granite Data Services.
+
+  Granite Data Services is free software; you can redistribute it and/or modify
+  it under the terms of the GNU Lesser General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or (at your
+  option) any later version.
+
+  Granite Data Services is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+  FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+  for more details.
+
+  You should have received a copy of the GNU Lesser General Public License
+  along with this library; if not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.wineshop.client.services;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import org.granite.client.tide.server.SimpleTideResponder;
+import org.granite.client.tide.server.TideFaultEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wineshop.client.entities.Vineyard;
+
+
+/**
+ * Reloads the displayed vineyards for which data updates have been missed
+ * 
+ * Each vineyard received in a data update carries the version it had in the previous update
+ * published by the server. When it is not the version displayed, intermediate updates have been
+ * missed (e.g. while disconnected or dropped by the server), so the vineyard is fetched again.
+ * Versions are not consecutive between updates as changes are coalesced by the server, so a
+ * version jump alone is only used when the server does not know the previous version.
+ * Its wines are not fetched, they are loaded by pages when the vineyard is displayed in the form.
+ */
+public class VineyardVersionWatcher {
+	
+	private static final Logger log = LoggerFactory.getLogger(VineyardVersionWatcher.class);
+	
+	private final VineyardRepository vineyardRepository;
+	
+	private final ChangeListener<Integer> versionListener = new ChangeListener<Integer>() {
+		@Override
+		public void changed(ObservableValue<? extends Integer> observable, final Integer oldVersion, final Integer newVersion) {
+			if (oldVersion == null || newVersion == null || newVersion <= oldVersion)
+				return;
+			final Vineyard vineyard = (Vineyard)((ReadOnlyProperty<?>)observable).getBean();
+			// The previous version is checked once the whole update has been merged
+			Platform.runLater(new Runnable() {
+				@Override
+				public void run() {
+					Integer previousVersion = vineyard.getPreviousVersion();
+					if (previousVersion != null ? previousVersion.equals(oldVersion) : newVersion - oldVersion <= 1)
+						return;
+					log.debug("Missed updates {} -> {} for vineyard {}, reloading", new Object[] { oldVersion, newVersion, vineyard.getId() });
+					reload(vineyard);
+				}
+			});
+		}
+	};
+	
+	public VineyardVersionWatcher(VineyardRepository vineyardRepository) {
+		this.vineyardRepository = vineyardRepository;
+	}
+	
+	public void watch(ObservableList<Vineyard> vineyards) {
+		for (Vineyard vineyard : vineyards)
+			vineyard.versionProperty().addListener(versionListener);
+		
+		vineyards.addListener(new ListChangeListener<Vineyard>() {
+			@Override
+			public void onChanged(Change<? extends Vineyard> change) {
+				while (change.next()) {
+					for (Vineyard vineyard : change.getRemoved())
+						vineyard.versionProperty().removeListener(versionListener);
+					for (Vineyard vineyard : change.getAddedSubList())
+						vineyard.versionProperty().addListener(versionListener);
+				}
+			}
+		});
+	}
+	
+	private void reload(Vineyard vineyard) {
+		// The result is merged in the entity manager, updating the displayed instance
+		vineyardRepository.findOne(vineyard.getId(), new SimpleTideResponder<Vineyard>() {
+			@Override
+			public void fault(TideFaultEvent event) {
+				log.error("Could not reload vineyard: " + event.getFault().getFaultDescription());
+			}
+		});
+	}
+}
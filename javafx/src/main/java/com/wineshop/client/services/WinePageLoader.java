@@ -0,0 +1,75 @@
+/*
+  GRANITE DATA SERVICES
+  Copyright (C) 2011 GRANITE DATA SERVICES S.A.S.
+
+  This file is part of Granite Data Services.
+
+  Granite Data Services is free software; you can redistribute it and/or modify
+  it under the terms of the GNU Lesser General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or (at your
+  option) any later version.
+
+  Granite Data Services is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+  FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+  for more details.
+
+  You should have received a copy of the GNU Lesser General Public License
+  along with this library; if not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.wineshop.client.services;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.granite.client.tide.server.TideResponder;
+
+import com.wineshop.client.collections.KeysetQuery.PageLoader;
+import com.wineshop.client.entities.Wine;
+import com.wineshop.client.entities.WineFilter;
+
+
+/**
+ * Loads pages of wines from {@link WineRepository#findByFilterAfter}
+ * 
+ * Null names and years are sorted by the server as empty names and year 0, the keyset of the last 
+ * element uses the same values.
+ */
+public class WinePageLoader implements PageLoader<Wine, WineFilter> {
+	
+	private final WineRepository wineRepository;
+	
+	public WinePageLoader(WineRepository wineRepository) {
+		this.wineRepository = wineRepository;
+	}
+	
+	@Override
+	public Future<List<Wine>> load(WineFilter filter, String[] sort, boolean[] desc, Wine last, int maxResults, TideResponder<List<Wine>> responder) {
+		Object[] lastValues = last != null ? sortValues(last, sort) : null;
+		Long lastId = last != null ? last.getId() : null;
+		return wineRepository.findByFilterAfter(filter, sort, desc, lastValues, lastId, maxResults, responder);
+	}
+	
+	@Override
+	public Object filterKey(WineFilter filter) {
+		return Arrays.asList(filter.getVineyardId(), filter.getMinYear(), filter.getMaxYear(), filter.getType());
+	}
+	
+	private static Object[] sortValues(Wine wine, String[] sort) {
+		if (sort == null)
+			return new Object[0];
+		Object[] values = new Object[sort.length];
+		for (int i = 0; i < sort.length; i++) {
+			if ("year".equals(sort[i]))
+				values[i] = wine.getYear() != null ? wine.getYear() : 0;
+			else if ("type".equals(sort[i]))
+				values[i] = wine.getType();
+			else
+				values[i] = wine.getName() != null ? wine.getName() : "";
+		}
+		return values;
+	}
+}
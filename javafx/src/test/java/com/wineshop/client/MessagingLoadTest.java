@@ -0,0 +1,272 @@
+/*
+  GRANITE DATA SERVICES
+  Copyright (C) 2011 GRANITE DATA SERVICES S.A.S.
+
+  This file is part of Granite Data Services.
+
+  Granite Data Services is free software; you can redistribute it and/or modify
+  it under the terms of the GNU Lesser General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or (at your
+  option) any later version.
+
+  Granite Data Services is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+  FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+  for more details.
+
+  You should have received a copy of the GNU Lesser General Public License
+  along with this library; if not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package com.wineshop.client;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.stage.Stage;
+
+import org.granite.client.javafx.tide.JavaFXApplication;
+import org.granite.client.javafx.tide.spring.Identity;
+import org.granite.client.tide.Context;
+import org.granite.client.tide.data.DataObserver;
+import org.granite.client.tide.impl.SimpleContextManager;
+import org.granite.client.tide.server.ServerSession;
+import org.granite.client.tide.server.SimpleTideResponder;
+import org.granite.client.tide.server.TideFaultEvent;
+import org.granite.client.tide.server.TideResultEvent;
+
+import com.wineshop.client.entities.Address;
+import com.wineshop.client.entities.Vineyard;
+import com.wineshop.client.services.VineyardRepository;
+import com.wineshop.metrics.Histogram;
+
+
+/**
+ * Load test of the messaging transports: a publisher updates a vineyard at a fixed rate while 
+ * many clients that display it receive the data updates of wineshopTopic, first with long-polling 
+ * then with WebSocket. Reports the latency between the save and the reception of each update by 
+ * each client, and the number of threads of the server read from its /metrics endpoint.
+ * 
+ * Needs a running server with the WebSocket servlet deployed (e.g. mvn jetty:run in webapp), 
+ * run as a JavaFX application, e.g. <code>mvn exec:java -Dexec.classpathScope=test 
+ * -Dexec.mainClass=com.wineshop.client.MessagingLoadTest -Dclients=50 -Dupdates=200</code>
+ */
+public class MessagingLoadTest extends Application {
+	
+	private static final String CONTEXT_ROOT = "/shop-admin-javafx";
+	private static final String HOST = System.getProperty("host", "localhost");
+	private static final int PORT = Integer.getInteger("port", 8080);
+	
+	private static final int CLIENTS = Integer.getInteger("clients", 50);
+	private static final int UPDATES = Integer.getInteger("updates", 200);
+	private static final long UPDATE_INTERVAL = Long.getLong("updateInterval", 50L);
+	private static final long TIMEOUT = 30L;
+	
+	public static void main(String[] args) {
+		launch(args);
+	}
+	
+	@Override
+	public void start(Stage stage) {
+		// Remote calls and waits run in a separate thread, results and data updates are received on the FX thread
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					measure("long-polling", false);
+					measure("websocket", true);
+				}
+				catch (Exception e) {
+					e.printStackTrace();
+				}
+				finally {
+					Platform.exit();
+				}
+			}
+		}, "messaging-load-test");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	private void measure(String transport, boolean webSocket) throws Exception {
+		final String prefix = "Load test " + transport + " " + System.currentTimeMillis();
+		final AtomicLongArray sendTimes = new AtomicLongArray(UPDATES);
+		final Histogram latency = new Histogram("latency", "ms", 1000.0);
+		// Updates of the same vineyard in the coalescing window of the server are received once, only the last one is awaited
+		final CountDownLatch complete = new CountDownLatch(CLIENTS);
+		int threadsBefore = serverThreads();
+		
+		Client publisher = new Client(webSocket);
+		Vineyard vineyard = new Vineyard();
+		vineyard.setName(prefix);
+		vineyard.setAddress(new Address());
+		vineyard.getAddress().setAddress("Load test");
+		vineyard = publisher.call(new Call<Vineyard>() {
+			@Override
+			public void invoke(Client client, Vineyard vineyard, Result<Vineyard> result) {
+				client.vineyardRepository.save(vineyard, result);
+			}
+		}, vineyard);
+		
+		List<Client> clients = new ArrayList<Client>(CLIENTS);
+		for (int i = 0; i < CLIENTS; i++) {
+			Client client = new Client(webSocket);
+			clients.add(client);
+			// Loading the vineyard registers the interest of the client for its updates
+			List<Vineyard> loaded = client.call(new Call<List<Vineyard>>() {
+				@Override
+				public void invoke(Client client, Vineyard vineyard, Result<List<Vineyard>> result) {
+					client.vineyardRepository.findByNameAfter(vineyard.getName(), null, null, null, null, 1, result);
+				}
+			}, vineyard);
+			loaded.get(0).nameProperty().addListener(new ChangeListener<String>() {
+				@Override
+				public void changed(ObservableValue<? extends String> observable, String oldName, String newName) {
+					int seq = Integer.parseInt(newName.substring(newName.lastIndexOf('#') + 1));
+					latency.record((System.nanoTime() - sendTimes.get(seq)) / 1000L);
+					if (seq == UPDATES - 1)
+						complete.countDown();
+				}
+			});
+		}
+		
+		int threadsPeak = serverThreads();
+		for (int seq = 0; seq < UPDATES; seq++) {
+			vineyard.setName(prefix + " #" + seq);
+			sendTimes.set(seq, System.nanoTime());
+			vineyard = publisher.call(new Call<Vineyard>() {
+				@Override
+				public void invoke(Client client, Vineyard vineyard, Result<Vineyard> result) {
+					client.vineyardRepository.save(vineyard, result);
+				}
+			}, vineyard);
+			if (seq % 20 == 0)
+				threadsPeak = Math.max(threadsPeak, serverThreads());
+			Thread.sleep(UPDATE_INTERVAL);
+		}
+		
+		boolean completed = complete.await(TIMEOUT, TimeUnit.SECONDS);
+		System.out.println(String.format("%s: %d clients, %d updates, %s%s, server threads %d before, %d peak", 
+			transport, CLIENTS, UPDATES, latency.snapshot(), completed ? "" : " (" + complete.getCount() + " clients did not receive the last update)", 
+			threadsBefore, threadsPeak));
+		
+		publisher.stop();
+		for (Client client : clients)
+			client.stop();
+	}
+	
+	/**
+	 * Number of threads of the server, -1 when the /metrics endpoint is not available
+	 */
+	private static int serverThreads() {
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new URL("http", HOST, PORT, CONTEXT_ROOT + "/metrics").openStream(), "UTF-8"));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.startsWith("jvm.threads:"))
+						return Integer.parseInt(line.substring(line.indexOf(':') + 1).trim());
+				}
+			}
+			finally {
+				reader.close();
+			}
+		}
+		catch (IOException e) {
+			// Ignore, not deployed or not local
+		}
+		return -1;
+	}
+	
+	
+	private interface Call<T> {
+		
+		public void invoke(Client client, Vineyard vineyard, Result<T> result);
+	}
+	
+	/**
+	 * A client session with its own context, logged in and subscribed to wineshopTopic
+	 */
+	private static class Client {
+		
+		private final ServerSession serverSession;
+		private final Identity identity;
+		private final DataObserver wineshopTopic;
+		private final VineyardRepository vineyardRepository;
+		
+		public Client(boolean webSocket) throws Exception {
+			Context context = new SimpleContextManager(new JavaFXApplication()).getContext();
+			serverSession = new ServerSession(CONTEXT_ROOT, HOST, PORT);
+			serverSession.addRemoteAliasPackage("com.wineshop.client.entities");
+			serverSession.setUseWebSocket(webSocket);
+			context.set("serverSession", serverSession);
+			serverSession.start();
+			
+			identity = new Identity(serverSession);
+			context.set("identity", identity);
+			vineyardRepository = new VineyardRepository(serverSession);
+			context.set("vineyardRepository", vineyardRepository);
+			wineshopTopic = new DataObserver(serverSession);
+			context.set("wineshopTopic", wineshopTopic);
+			wineshopTopic.start();
+			
+			Result<String> login = new Result<String>();
+			identity.login("user", "user", login);
+			login.get();
+			wineshopTopic.subscribe();
+		}
+		
+		public <T> T call(Call<T> call, Vineyard vineyard) throws Exception {
+			Result<T> result = new Result<T>();
+			call.invoke(this, vineyard, result);
+			return result.get();
+		}
+		
+		public void stop() throws Exception {
+			wineshopTopic.unsubscribe();
+			wineshopTopic.stop();
+			serverSession.stop();
+		}
+	}
+	
+	private static class Result<T> extends SimpleTideResponder<T> {
+		
+		private final CountDownLatch done = new CountDownLatch(1);
+		private T value;
+		private String fault;
+		
+		@Override
+		public void result(TideResultEvent<T> event) {
+			value = event.getResult();
+			done.countDown();
+		}
+		
+		@Override
+		public void fault(TideFaultEvent event) {
+			fault = event.getFault().getFaultDescription();
+			done.countDown();
+		}
+		
+		public T get() throws Exception {
+			if (!done.await(TIMEOUT, TimeUnit.SECONDS))
+				throw new TimeoutException("No response after " + TIMEOUT + " s");
+			if (fault != null)
+				throw new IllegalStateException(fault);
+			return value;
+		}
+	}
+}
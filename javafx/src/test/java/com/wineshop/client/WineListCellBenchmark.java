@@ -0,0 +1,117 @@
+/*
+  GRANITE DATA SERVICES
+  Copyright (C) 2011 GRANITE DATA SERVICES S.A.S.
+
+  This file is part of Granite Data Services.
+
+  Granite Data Services is free software; you can redistribute it and/or modify
+  it under the terms of the GNU Lesser General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or (at your
+  option) any later version.
+
+  Granite Data Services is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+  FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+  for more details.
+
+  You should have received a copy of the GNU Lesser General Public License
+  along with this library; if not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.wineshop.client;
+
+import java.util.Arrays;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.Scene;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.stage.Stage;
+import javafx.util.Callback;
+
+import com.wineshop.client.entities.Vineyard;
+import com.wineshop.client.entities.Wine;
+import com.wineshop.client.entities.Wine$Type;
+
+
+/**
+ * Measures the frame times of a list of 10000 wines edited with {@link WineListCell}, 
+ * scrolled programmatically by a few rows at each frame
+ * 
+ * Run as a JavaFX application, e.g. <code>mvn exec:java -Dexec.classpathScope=test 
+ * -Dexec.mainClass=com.wineshop.client.WineListCellBenchmark</code>
+ */
+public class WineListCellBenchmark extends Application {
+	
+	private static final int WINES = 10000;
+	private static final int ROWS_PER_FRAME = 7;
+	private static final int WARMUP_FRAMES = 120;
+	
+	private int cellCount = 0;
+	
+	public static void main(String[] args) {
+		launch(args);
+	}
+	
+	@Override
+	public void start(Stage stage) {
+		Vineyard vineyard = new Vineyard();
+		vineyard.setName("Benchmark vineyard");
+		ObservableList<Wine> wines = FXCollections.observableArrayList();
+		Wine$Type[] types = Wine$Type.values();
+		for (int i = 0; i < WINES; i++) {
+			Wine wine = new Wine();
+			wine.setVineyard(vineyard);
+			wine.setName("Wine " + i);
+			wine.setYear(1950 + i % 60);
+			wine.setType(types[i % types.length]);
+			wines.add(wine);
+		}
+		
+		final ListView<Wine> listWines = new ListView<Wine>(wines);
+		listWines.setCellFactory(new Callback<ListView<Wine>, ListCell<Wine>>() {
+			public ListCell<Wine> call(ListView<Wine> listView) {
+				cellCount++;
+				return new WineListCell();
+			}
+		});
+		stage.setScene(new Scene(listWines, 400, 600));
+		stage.show();
+		
+		final long[] frameTimes = new long[WINES / ROWS_PER_FRAME];
+		new AnimationTimer() {
+			private int frame = -WARMUP_FRAMES;
+			private long last = 0L;
+			
+			@Override
+			public void handle(long now) {
+				if (frame >= 0 && last > 0L)
+					frameTimes[frame] = now - last;
+				last = now;
+				frame++;
+				if (frame < frameTimes.length) {
+					listWines.scrollTo(Math.max(0, frame) * ROWS_PER_FRAME);
+					return;
+				}
+				stop();
+				report(frameTimes);
+				Platform.exit();
+			}
+		}.start();
+	}
+	
+	private void report(long[] frameTimes) {
+		long[] sorted = frameTimes.clone();
+		Arrays.sort(sorted);
+		long total = 0L;
+		for (long time : sorted)
+			total += time;
+		System.out.println(String.format("%d frames, %d cells created, frame time avg %.2f ms, p95 %.2f ms, max %.2f ms",
+			sorted.length, cellCount, total / 1e6 / sorted.length, sorted[sorted.length * 95 / 100] / 1e6, sorted[sorted.length - 1] / 1e6));
+	}
+}
@@ -0,0 +1,103 @@
+package com.wineshop.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of positive long values (latencies in microseconds, sizes in bytes...).
+ * Each power of two is divided in 8 linear buckets, so percentiles are known within 12.5%
+ * with a fixed footprint whatever the number and range of the recorded values.
+ *
+ * Shared by the server and the JavaFX client, which report the same percentiles.
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final String unit;
+    private final double scale;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param name name of the histogram
+     * @param unit unit of the reported values
+     * @param scale ratio between recorded and reported values (e.g. 1000 for values recorded in us and reported in ms)
+     */
+    public Histogram(String name, String unit, double scale) {
+        this.name = name;
+        this.unit = unit;
+        this.scale = scale;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value))
+            current = max.get();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Copy of the current state, the copy is not atomic but each recorded value is seen at most once
+     */
+    public HistogramSnapshot snapshot() {
+        long[] values = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            values[i] = counts.get(i);
+        return new HistogramSnapshot(name, unit, scale, values, count.get(), sum.get(), max.get());
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0L);
+        count.set(0L);
+        sum.set(0L);
+        max.set(0L);
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int)value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int)(value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Highest value counted in a bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long lower = (long)(SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
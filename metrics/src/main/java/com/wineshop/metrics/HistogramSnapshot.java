@@ -0,0 +1,102 @@
+package com.wineshop.metrics;
+
+/**
+ * Immutable state of a {@link Histogram}, exposed as composite data by the JMX bean of the client
+ */
+public class HistogramSnapshot {
+
+    private final String name;
+    private final String unit;
+    private final double scale;
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    HistogramSnapshot(String name, String unit, double scale, long[] counts, long count, long sum, long max) {
+        this.name = name;
+        this.unit = unit;
+        this.scale = scale;
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return count > 0 ? sum / scale / count : 0.0;
+    }
+
+    public double getP50() {
+        return percentile(0.50);
+    }
+
+    public double getP95() {
+        return percentile(0.95);
+    }
+
+    public double getP99() {
+        return percentile(0.99);
+    }
+
+    public double getMax() {
+        return max / scale;
+    }
+
+    public double getTotal() {
+        return sum / scale;
+    }
+
+    /**
+     * Upper bound of the bucket holding the requested percentile, never above the recorded maximum
+     */
+    public double percentile(double percentile) {
+        if (count == 0)
+            return 0.0;
+        long rank = (long)Math.ceil(percentile * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0)
+                return Math.min(Histogram.upperBound(i), max) / scale;
+        }
+        return max / scale;
+    }
+
+    /**
+     * Values recorded since a previous snapshot of the same histogram
+     *
+     * The maximum of the interval is estimated from the highest bucket that received values.
+     * When the histogram has been reset in between, the whole snapshot is returned.
+     */
+    public HistogramSnapshot since(HistogramSnapshot previous) {
+        if (previous == null || previous.count > count)
+            return this;
+        long[] delta = new long[counts.length];
+        long intervalMax = 0;
+        for (int i = 0; i < counts.length; i++) {
+            delta[i] = counts[i] - previous.counts[i];
+            if (delta[i] > 0)
+                intervalMax = Math.min(Histogram.upperBound(i), max);
+        }
+        return new HistogramSnapshot(name, unit, scale, delta, count - previous.count, sum - previous.sum, intervalMax);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: count=%d mean=%.1f p50=%.1f p95=%.1f p99=%.1f max=%.1f %s",
+                name, count, getMean(), getP50(), getP95(), getP99(), getMax(), unit);
+    }
+}